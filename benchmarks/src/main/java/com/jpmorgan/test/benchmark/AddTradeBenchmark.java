@@ -0,0 +1,113 @@
+package com.jpmorgan.test.benchmark;
+
+import com.jpmorgan.test.bl.StockNotInitializedException;
+import com.jpmorgan.test.bl.TradesManager;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeStatus;
+import com.jpmorgan.test.pojo.TradeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of trade ingestion by 1 and 4 writer threads, for single hot stock and trades spread over
+ * many stocks. Use <code>-t N</code> to run with other number of writers.<br/>
+ * Every case is run with metrics disabled and enabled, so overhead of metrics on the ingest path is visible.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AddTradeBenchmark {
+    /** Size of trades batch */
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"1", "100"})
+    private int stocksCount;
+
+    @Param({"false", "true"})
+    private boolean metricsEnabled;
+
+    private TradesManager tradesManager;
+    private String[] stockSymbols;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.tradesManager = new TradesManager();
+        this.tradesManager.setMetricsEnabled(this.metricsEnabled);
+        this.stockSymbols = new String[this.stocksCount];
+        for (int i = 0; i < this.stocksCount; i++) {
+            this.stockSymbols[i] = "S" + i;
+            this.tradesManager.addOrUpdateStock(this.stockSymbols[i], StockType.Common, 100, 0);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addTrade() throws StockNotInitializedException {
+        this.doAddTrade();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addTrade4Writers() throws StockNotInitializedException {
+        this.doAddTrade();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public TradeStatus[] addTradesBatch(Batch batch) {
+        return this.tradesManager.addTrades(batch.stockSymbols, batch.tradeTypes, batch.quantities,
+                                            batch.totalPrices, batch.dividends);
+    }
+
+    private void doAddTrade() throws StockNotInitializedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.tradesManager.addTrade(this.stockSymbols[random.nextInt(this.stockSymbols.length)], TradeType.buy,
+                                    random.nextInt(100) + 1, random.nextInt(1000) + 1, 1);
+    }
+
+    /**
+     * Prepared batch of trades for each thread
+     */
+    @State(Scope.Thread)
+    public static class Batch {
+        String[] stockSymbols;
+        TradeType[] tradeTypes;
+        int[] quantities;
+        int[] totalPrices;
+        int[] dividends;
+
+        @Setup(Level.Trial)
+        public void setUp(AddTradeBenchmark benchmark) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            this.stockSymbols = new String[BATCH_SIZE];
+            this.tradeTypes = new TradeType[BATCH_SIZE];
+            this.quantities = new int[BATCH_SIZE];
+            this.totalPrices = new int[BATCH_SIZE];
+            this.dividends = new int[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                this.stockSymbols[i] = benchmark.stockSymbols[random.nextInt(benchmark.stockSymbols.length)];
+                this.tradeTypes[i] = TradeType.buy;
+                this.quantities[i] = random.nextInt(100) + 1;
+                this.totalPrices[i] = random.nextInt(1000) + 1;
+                this.dividends[i] = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.jpmorgan.test.benchmark;
+
+import com.jpmorgan.test.bl.StockNotInitializedException;
+import com.jpmorgan.test.bl.TradesManager;
+import com.jpmorgan.test.pojo.MarketAnalytics;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of market wide calculations for different number of stocks. Trade is added to single stock before
+ * each index calculation, so index is refreshed every time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllSharesIndexBenchmark {
+    private static final int TRADES_PER_STOCK = 100;
+
+    @Param({"10", "1000", "10000"})
+    private int stocksCount;
+
+    private TradesManager tradesManager;
+    private String[] stockSymbols;
+
+    @Setup(Level.Trial)
+    public void setUp() throws StockNotInitializedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.tradesManager = new TradesManager();
+        this.stockSymbols = new String[this.stocksCount];
+        for (int i = 0; i < this.stocksCount; i++) {
+            this.stockSymbols[i] = "S" + i;
+            this.tradesManager.addOrUpdateStock(this.stockSymbols[i], StockType.Common, 100, 0);
+            for (int j = 0; j < TRADES_PER_STOCK; j++) {
+                this.tradesManager.addTrade(this.stockSymbols[i], TradeType.buy, random.nextInt(100) + 1,
+                                            random.nextInt(1000) + 1, 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public double calculateGBCEAllSharesIndex() throws StockNotInitializedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.tradesManager.addTrade(this.stockSymbols[random.nextInt(this.stocksCount)], TradeType.buy, 1,
+                                    random.nextInt(1000) + 1, 1);
+        return this.tradesManager.calculateGBCEAllSharesIndex();
+    }
+
+    @Benchmark
+    public MarketAnalytics calculateMarketAnalytics() {
+        return this.tradesManager.calculateMarketAnalytics();
+    }
+}
@@ -0,0 +1,30 @@
+package com.jpmorgan.test.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks and writes results in JSON format, so results of two builds can be compared.<br/>
+ * All JMH command line options are accepted, e.g. <code>-t 4</code> to run benchmarks by 4 threads,
+ * <code>-rff file.json</code> to change result file or benchmark name regexp to run only some benchmarks.
+ */
+public class BenchmarkRunner {
+    /** Default result file */
+    private static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        if (!commandLineOptions.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            options.result(RESULT_FILE);
+        }
+        options.parent(commandLineOptions);
+
+        new Runner(options.build()).run();
+    }
+}
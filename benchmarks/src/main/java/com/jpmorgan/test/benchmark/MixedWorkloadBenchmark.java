@@ -0,0 +1,74 @@
+package com.jpmorgan.test.benchmark;
+
+import com.jpmorgan.test.bl.StockNotInitializedException;
+import com.jpmorgan.test.bl.TradesManager;
+import com.jpmorgan.test.pojo.StockAnalytics;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed workload - writers add trades while readers query the same stocks and the index.
+ * Throughput of each operation is reported separately.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class MixedWorkloadBenchmark {
+    private static final int STOCKS_COUNT = 20;
+
+    private TradesManager tradesManager;
+    private String[] stockSymbols;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.tradesManager = new TradesManager();
+        this.stockSymbols = new String[STOCKS_COUNT];
+        for (int i = 0; i < STOCKS_COUNT; i++) {
+            this.stockSymbols[i] = "S" + i;
+            this.tradesManager.addOrUpdateStock(this.stockSymbols[i], StockType.Common, 100, 0);
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void addTrade() throws StockNotInitializedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.tradesManager.addTrade(this.stockSymbols[random.nextInt(STOCKS_COUNT)], TradeType.buy,
+                                    random.nextInt(100) + 1, random.nextInt(1000) + 1, 1);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public StockAnalytics getStockAnalytics() throws StockNotInitializedException {
+        String stockSymbol = this.stockSymbols[ThreadLocalRandom.current().nextInt(STOCKS_COUNT)];
+        return this.tradesManager.getStockAnalytics(stockSymbol);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public double calculateGBCEAllSharesIndex() {
+        return this.tradesManager.calculateGBCEAllSharesIndex();
+    }
+}
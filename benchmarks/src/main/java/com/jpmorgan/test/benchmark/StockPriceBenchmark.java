@@ -0,0 +1,80 @@
+package com.jpmorgan.test.benchmark;
+
+import com.jpmorgan.test.bl.StockNotInitializedException;
+import com.jpmorgan.test.bl.TradesManager;
+import com.jpmorgan.test.pojo.StockAnalytics;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of single stock queries for different number of trades in calculation interval.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StockPriceBenchmark {
+    private static final String STOCK_SYMBOL = "ABC";
+    private static final int BATCH_SIZE = 10000;
+
+    @Param({"1000", "100000", "1000000"})
+    private int windowSize;
+
+    private TradesManager tradesManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.tradesManager = new TradesManager();
+        this.tradesManager.addOrUpdateStock(STOCK_SYMBOL, StockType.Common, 100, 0);
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int added = 0; added < this.windowSize; added += BATCH_SIZE) {
+            int batchLength = Math.min(BATCH_SIZE, this.windowSize - added);
+            String[] stockSymbols = new String[batchLength];
+            TradeType[] tradeTypes = new TradeType[batchLength];
+            int[] quantities = new int[batchLength];
+            int[] totalPrices = new int[batchLength];
+            int[] dividends = new int[batchLength];
+            for (int i = 0; i < batchLength; i++) {
+                stockSymbols[i] = STOCK_SYMBOL;
+                tradeTypes[i] = TradeType.values()[random.nextInt(TradeType.values().length)];
+                quantities[i] = random.nextInt(100) + 1;
+                totalPrices[i] = random.nextInt(1000) + 1;
+                dividends[i] = 1;
+            }
+            this.tradesManager.addTrades(stockSymbols, tradeTypes, quantities, totalPrices, dividends);
+        }
+    }
+
+    @Benchmark
+    public int calculateStockPrice() throws StockNotInitializedException {
+        return this.tradesManager.calculateStockPrice(STOCK_SYMBOL);
+    }
+
+    @Benchmark
+    public float calculateDividendYield() throws StockNotInitializedException {
+        return this.tradesManager.calculateDividendYield(STOCK_SYMBOL);
+    }
+
+    @Benchmark
+    public StockAnalytics getStockAnalytics() throws StockNotInitializedException {
+        return this.tradesManager.getStockAnalytics(STOCK_SYMBOL);
+    }
+}
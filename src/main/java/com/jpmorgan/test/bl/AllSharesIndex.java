@@ -0,0 +1,244 @@
+package com.jpmorgan.test.bl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Incrementally maintained GBCE All Share Index.<br/>
+ * Index keeps sum of logarithms of all stock prices, so geometric mean is calculated as exponent of the sum
+ * divided by number of stocks. Stock price changes when new trade is added or when the oldest trade leaves
+ * calculation interval:
+ * <ul>
+ *     <li>stock with new trades is pushed to list of dirty stocks by the writer (without locking)</li>
+ *     <li>each stock is scheduled by the time when its oldest trade in calculation interval expires</li>
+ * </ul>
+ * On refresh only dirty and expired stocks are recalculated. Calculated value is reused by readers
+ * until it is older than max lag.<br/>
+ * Both the dirty list and the schedule link the stocks themselves, so neither trades nor refreshes allocate.
+ */
+final class AllSharesIndex {
+    /** Number of incremental updates after which sum of logarithms is recalculated to avoid rounding drift */
+    private static final int REBUILD_UPDATES = 1000000;
+
+    /** All stocks of the index */
+    private final List<Member> members;
+    /** Head of linked list of stocks with new trades since the last refresh */
+    private final AtomicReference<Member> dirtyMembers;
+    /** Stocks ordered by the time when their price changes because of trade expiry */
+    private final PriorityQueue<Member> expiries;
+    /** Sum of logarithms of all non zero prices */
+    private double logPricesSum;
+    /** Number of stocks with zero price */
+    private int zeroPricesCount;
+    /** Number of incremental updates since the last recalculation of logarithms sum */
+    private int updatesCount;
+    /** Max time in millis for which calculated value can be reused */
+    private volatile long maxLag;
+    /** Last calculated value */
+    private volatile double value;
+    /** Time of the last refresh */
+    private volatile long refreshTime;
+    /** Set when stocks are added after the last refresh, so value must be recalculated */
+    private volatile boolean outdated;
+
+    /**
+     * Default constructor
+     */
+    AllSharesIndex() {
+        super();
+
+        this.members = new ArrayList<Member>();
+        this.dirtyMembers = new AtomicReference<Member>();
+        this.expiries = new PriorityQueue<Member>();
+        this.value = Double.NaN;
+    }
+
+    /**
+     * Add stock to the index. Stock without trades has zero price.
+     *
+     * @param tradesManager Trades of the stock
+     * @return Index member that must be marked as dirty on every new trade
+     */
+    synchronized Member addMember(StockTradesManager tradesManager) {
+        Member member = new Member(tradesManager);
+        this.members.add(member);
+        this.zeroPricesCount++;
+        this.markDirty(member);
+        this.outdated = true;
+        return member;
+    }
+
+    /**
+     * Mark stock as changed by new trade. Can be called by any thread, doesn't block.
+     *
+     * @param member Changed stock
+     */
+    void markDirty(Member member) {
+        if (member.dirty.compareAndSet(false, true)) {
+            Member head;
+            do {
+                head = this.dirtyMembers.get();
+                member.nextDirty = head;
+            } while (!this.dirtyMembers.compareAndSet(head, member));
+        }
+    }
+
+    /**
+     * Get index value. Value is recalculated only if the last one is older than max lag.
+     *
+     * @param currentTime Current time
+     * @return Geometric mean of all stock prices, zero if some of the prices is zero
+     */
+    double getValue(long currentTime) {
+        if (!this.outdated && currentTime - this.refreshTime < this.maxLag) {
+            return this.value;
+        }
+
+        return this.refresh(currentTime);
+    }
+
+    /**
+     * Set max time for which calculated value can be reused
+     *
+     * @param maxLag Max lag in millis. Zero means that value is always up to date
+     */
+    void setMaxLag(long maxLag) {
+        if (maxLag < 0) {
+            throw new RuntimeException("Invalid max lag value");
+        }
+
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Recalculate prices of all dirty and expired stocks
+     *
+     * @param currentTime Current time
+     * @return Calculated index value
+     */
+    private synchronized double refresh(long currentTime) {
+        Member member = this.dirtyMembers.getAndSet(null);
+        while (member != null) {
+            // next is read before the flag is cleared, the writer may push the stock again after it
+            Member next = member.nextDirty;
+            member.nextDirty = null;
+            member.dirty.set(false);
+            this.update(member, currentTime);
+            member = next;
+        }
+
+        while (!this.expiries.isEmpty() && this.expiries.peek().scheduledTime <= currentTime) {
+            Member expired = this.expiries.poll();
+            expired.scheduled = false;
+            if (expired.scheduledTime == expired.expiryTime) {
+                this.update(expired, currentTime);
+            } else {
+                this.schedule(expired);
+            }
+        }
+
+        if (this.updatesCount >= REBUILD_UPDATES) {
+            this.logPricesSum = 0;
+            for (Member indexMember: this.members) {
+                if (indexMember.price != 0) {
+                    this.logPricesSum += indexMember.logPrice;
+                }
+            }
+            this.updatesCount = 0;
+        }
+
+        double value;
+        if (this.members.isEmpty()) {
+            value = Double.NaN;
+        } else if (this.zeroPricesCount > 0) {
+            value = 0;
+        } else {
+            value = Math.exp(this.logPricesSum / this.members.size());
+        }
+
+        this.value = value;
+        this.refreshTime = currentTime;
+        this.outdated = false;
+        return value;
+    }
+
+    /**
+     * Recalculate price of single stock and replace its contribution to the index
+     */
+    private void update(Member member, long currentTime) {
+        if (member.price == 0) {
+            this.zeroPricesCount--;
+        } else {
+            this.logPricesSum -= member.logPrice;
+        }
+
+        member.price = member.tradesManager.calculateStockPrice(currentTime);
+        if (member.price == 0) {
+            this.zeroPricesCount++;
+        } else {
+            member.logPrice = Math.log(member.price);
+            this.logPricesSum += member.logPrice;
+        }
+        this.updatesCount++;
+
+        member.expiryTime = member.tradesManager.getCalcIntervalExpiryTime(currentTime);
+        this.schedule(member);
+    }
+
+    /**
+     * Schedule stock by its expiry time. Stock is in the schedule at most once - expiry time only moves later
+     * while trades are added, so stock that is scheduled earlier is left in place and rescheduled when it is due.
+     */
+    private void schedule(Member member) {
+        if (member.expiryTime == Long.MAX_VALUE) {
+            // stock without trades is dropped from the schedule when it is due
+            return;
+        }
+
+        if (member.scheduled) {
+            if (member.scheduledTime <= member.expiryTime) {
+                return;
+            }
+            this.expiries.remove(member);
+        }
+        member.scheduledTime = member.expiryTime;
+        member.scheduled = true;
+        this.expiries.add(member);
+    }
+
+    /**
+     * Single stock of the index
+     */
+    static final class Member implements Comparable<Member> {
+        /** Trades of the stock */
+        private final StockTradesManager tradesManager;
+        /** Set when stock has new trades since the last refresh */
+        private final AtomicBoolean dirty;
+        /** Next stock in the dirty list */
+        private Member nextDirty;
+        /** Price used in the index */
+        private int price;
+        /** Logarithm of the price */
+        private double logPrice;
+        /** When price changes because of trade expiry */
+        private long expiryTime;
+        /** Set while the stock is in the schedule */
+        private boolean scheduled;
+        /** Time by which the stock is ordered in the schedule, changed only when it is not scheduled */
+        private long scheduledTime;
+
+        private Member(StockTradesManager tradesManager) {
+            this.tradesManager = tradesManager;
+            this.dirty = new AtomicBoolean();
+            this.expiryTime = Long.MAX_VALUE;
+        }
+
+        @Override
+        public int compareTo(Member member) {
+            return this.scheduledTime < member.scheduledTime ? -1 : (this.scheduledTime > member.scheduledTime ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.jpmorgan.test.bl;
+
+/**
+ * Listener of GBCE All Share Index updates.
+ *
+ * @see TradesManager#subscribeAllSharesIndex(AllSharesIndexListener)
+ */
+public interface AllSharesIndexListener {
+    /**
+     * Called by publisher thread when value of the index changed. Listener should return quickly -
+     * it delays updates of other listeners, but never delays adding of trades.
+     *
+     * @param calculationTime Time for which the index is calculated
+     * @param allSharesIndex Current value of the index
+     */
+    void onAllSharesIndex(long calculationTime, double allSharesIndex);
+}
@@ -0,0 +1,187 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+import com.jpmorgan.test.pojo.Trade;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Read-through cache of stock analytics.<br/>
+ * Calculated analytics are kept in slot of the {@link StockEntry}, so cache hit needs no lookup. Cached value is
+ * valid while version of trades of the stock is the same and the oldest trade in calculation interval has not
+ * expired yet - analytics between trades are read from the slot instead of reading the window again. Value can
+ * also be reused for max staleness after it is calculated, even if trades changed. Update of the stock replaces
+ * its entry, so the new entry starts without cached value and the replaced entry is {@link #remove(StockEntry)
+ * removed} from the cache.<br/>
+ * Number of cached stocks is bounded - value of the stock that was cached first is evicted.
+ */
+final class AnalyticsCache {
+    /** Max number of stocks with cached value */
+    private final int maxSize;
+    /** Time in millis for which value is reused even if trades changed */
+    private final long maxStaleness;
+    /** Entries with cached value in order they were cached */
+    private final ConcurrentLinkedQueue<StockEntry> cachedEntries;
+    /** Number of entries in the queue */
+    private final AtomicInteger size;
+
+    /**
+     * Construct empty cache
+     *
+     * @param maxSize Max number of stocks with cached value. Must be positive value
+     * @param maxStaleness Time in millis for which value is reused even if trades changed. Cannot be negative
+     */
+    AnalyticsCache(int maxSize, long maxStaleness) {
+        super();
+
+        if (maxSize <= 0) {
+            throw new RuntimeException("Invalid max size value");
+        }
+
+        if (maxStaleness < 0) {
+            throw new RuntimeException("Invalid max staleness value");
+        }
+
+        this.maxSize = maxSize;
+        this.maxStaleness = maxStaleness;
+        this.cachedEntries = new ConcurrentLinkedQueue<StockEntry>();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Get cached analytics of the stock or calculate and cache them.<br/>
+     * Returned analytics are shared by all callers and must not be modified - trades manager returns only
+     * their {@link #copy(StockAnalytics) copy}.
+     *
+     * @param entry Stock with its trades
+     * @param currentTime End of calculation interval
+     * @return Analytics of the stock at given time
+     */
+    StockAnalytics getStockAnalytics(StockEntry entry, long currentTime) {
+        StockTradesManager stockTradesManager = entry.getTradesManager();
+        Value value = entry.getCachedAnalytics().get();
+        if (value != null && value.cache == this && currentTime >= value.calculationTime) {
+            // zero staleness never reuses value of changed trades, even in the same millisecond
+            if (currentTime - value.calculationTime < this.maxStaleness) {
+                return value.stockAnalytics;
+            }
+
+            if (currentTime < value.expiryTime && value.version == stockTradesManager.getVersion()) {
+                return value.stockAnalytics;
+            }
+        }
+
+        // version is read first, so trades added during calculation make the value invalid
+        long version = stockTradesManager.getVersion();
+        StockAnalytics stockAnalytics = TradesManager.calculateStockAnalytics(entry, currentTime);
+        long expiryTime = stockTradesManager.getCalcIntervalExpiryTime(currentTime);
+        this.put(entry, new Value(this, version, currentTime, expiryTime, stockAnalytics));
+        return stockAnalytics;
+    }
+
+    /**
+     * @return Number of stocks with cached value
+     */
+    int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Remove entry that is {@link StockEntry#markReplaced() replaced} by stock update, so it doesn't take
+     * place of stocks that are still cached. Entry must be marked before it is removed.
+     *
+     * @param entry Replaced entry
+     */
+    void remove(StockEntry entry) {
+        if (this.cachedEntries.remove(entry)) {
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Store value to the entry slot and evict the oldest entry if the cache is full
+     */
+    private void put(StockEntry entry, Value value) {
+        Value previous = entry.getCachedAnalytics().getAndSet(value);
+        if (previous != null && previous.cache == this) {
+            // entry is already queued
+            return;
+        }
+
+        this.cachedEntries.offer(entry);
+        int size = this.size.incrementAndGet();
+        if (entry.isReplaced()) {
+            // entry is replaced while its value was calculated, it may be queued after it was removed
+            this.remove(entry);
+            return;
+        }
+        if (size > this.maxSize) {
+            StockEntry oldest = this.cachedEntries.poll();
+            if (oldest != null) {
+                this.size.decrementAndGet();
+                // slot that is not queued is empty, so the next value queues the entry again
+                oldest.getCachedAnalytics().set(null);
+            }
+        }
+    }
+
+    /**
+     * Copy cached analytics, so the caller can't modify shared value
+     *
+     * @param stockAnalytics Cached analytics
+     * @return New analytics with the same values and copy of the last trade
+     */
+    static StockAnalytics copy(StockAnalytics stockAnalytics) {
+        StockAnalytics copy = new StockAnalytics();
+        copy.setStockSymbol(stockAnalytics.getStockSymbol());
+        copy.setStockPrice(stockAnalytics.getStockPrice());
+        copy.setDividendYield(stockAnalytics.getDividendYield());
+        copy.setPeRatio(stockAnalytics.getPeRatio());
+        copy.setVolume(stockAnalytics.getVolume());
+        copy.setTradesCount(stockAnalytics.getTradesCount());
+        Trade lastTrade = stockAnalytics.getLastTrade();
+        if (lastTrade != null) {
+            Trade lastTradeCopy = new Trade(lastTrade.getTradeType(), lastTrade.getDateTime(), lastTrade.getQuantity(),
+                                            lastTrade.getTotalPrice(), lastTrade.getDividend());
+            lastTradeCopy.setSequence(lastTrade.getSequence());
+            copy.setLastTrade(lastTradeCopy);
+        }
+        return copy;
+    }
+
+    /**
+     * Create empty slot of cached value
+     *
+     * @return Slot that is kept by stock entry
+     */
+    static AtomicReference<Value> newSlot() {
+        return new AtomicReference<Value>();
+    }
+
+    /**
+     * Immutable cached analytics together with their validity
+     */
+    static final class Value {
+        /** Cache that created the value, value of disabled cache is ignored */
+        private final AnalyticsCache cache;
+        /** Version of trades before calculation */
+        private final long version;
+        /** Time of calculation */
+        private final long calculationTime;
+        /** Time when the oldest trade expires from calculation interval */
+        private final long expiryTime;
+        /** Calculated analytics */
+        private final StockAnalytics stockAnalytics;
+
+        private Value(AnalyticsCache cache, long version, long calculationTime, long expiryTime,
+                      StockAnalytics stockAnalytics) {
+            this.cache = cache;
+            this.version = version;
+            this.calculationTime = calculationTime;
+            this.expiryTime = expiryTime;
+            this.stockAnalytics = stockAnalytics;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes analytics updates to subscribed listeners.<br/>
+ * Writers only {@link #markChanged(Topic) mark} stock as changed - stock is put to pending queue once until it
+ * is published, so the queue is bounded by number of stocks and marking never blocks. Publisher thread
+ * periodically drains the queue and calculates analytics of each changed stock once, so every stock is published
+ * at most once per publish interval regardless of number of trades and listeners.<br/>
+ * Stocks are published also when the oldest trade leaves calculation interval, and index is published when
+ * its value changes.
+ */
+final class AnalyticsPublisher {
+    /** All stocks by symbol */
+    private final Map<String, StockEntry> stocksMap;
+    /** GBCE All Share Index */
+    private final AllSharesIndex allSharesIndex;
+    /** Source of current time */
+    private final TimeSource timeSource;
+    /** Stocks that are changed and not published yet */
+    private final ConcurrentLinkedQueue<Topic> pendingTopics;
+    /** Stocks that have listeners */
+    private final CopyOnWriteArrayList<Topic> subscribedTopics;
+    /** Listeners of the index */
+    private final CopyOnWriteArrayList<AllSharesIndexListener> indexListeners;
+    /** Drained pending stocks, reused by publisher thread */
+    private final List<Topic> publishedTopics;
+    /** Last published value of the index */
+    private double lastIndexValue;
+    /** Set when index must be published even if it is not changed */
+    private volatile boolean indexPublishRequired;
+
+    /**
+     * Construct publisher
+     *
+     * @param stocksMap All stocks by symbol
+     * @param allSharesIndex GBCE All Share Index
+     * @param timeSource Source of current time
+     */
+    AnalyticsPublisher(Map<String, StockEntry> stocksMap, AllSharesIndex allSharesIndex, TimeSource timeSource) {
+        super();
+
+        this.stocksMap = stocksMap;
+        this.allSharesIndex = allSharesIndex;
+        this.timeSource = timeSource;
+        this.pendingTopics = new ConcurrentLinkedQueue<Topic>();
+        this.subscribedTopics = new CopyOnWriteArrayList<Topic>();
+        this.indexListeners = new CopyOnWriteArrayList<AllSharesIndexListener>();
+        this.publishedTopics = new ArrayList<Topic>();
+    }
+
+    /**
+     * Mark stock as changed. Does nothing if stock has no listeners or it is already pending.<br/>
+     * Can be called by any thread, never blocks.
+     *
+     * @param topic Topic of the stock
+     */
+    void markChanged(Topic topic) {
+        if (!topic.pending.get() && !topic.listeners.isEmpty() && topic.pending.compareAndSet(false, true)) {
+            this.pendingTopics.offer(topic);
+        }
+    }
+
+    /**
+     * Register listener of single stock
+     *
+     * @param topic Topic of the stock
+     * @param listener Listener to register
+     * @return Subscription that removes the listener
+     */
+    Subscription subscribe(final Topic topic, final StockAnalyticsListener listener) {
+        synchronized (topic) {
+            if (topic.listeners.isEmpty()) {
+                this.subscribedTopics.add(topic);
+            }
+            topic.listeners.add(listener);
+        }
+
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                synchronized (topic) {
+                    if (topic.listeners.remove(listener) && topic.listeners.isEmpty()) {
+                        subscribedTopics.remove(topic);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Register listener of the index
+     *
+     * @param listener Listener to register
+     * @return Subscription that removes the listener
+     */
+    Subscription subscribeAllSharesIndex(final AllSharesIndexListener listener) {
+        this.indexListeners.add(listener);
+        this.indexPublishRequired = true;
+
+        return new Subscription() {
+            @Override
+            public void cancel() {
+                indexListeners.remove(listener);
+            }
+        };
+    }
+
+    /**
+     * Publish all pending stocks and the index. Must be called by single thread at a time.<br/>
+     * Failure of a listener or of a calculation is swallowed, so it never stops publishing of other stocks
+     * and never leaves stock pending forever.
+     */
+    void publish() {
+        long currentTime = this.timeSource.currentTimeMillis();
+
+        // price changes also when trades leave calculation interval
+        for (Topic topic: this.subscribedTopics) {
+            if (currentTime >= topic.expiryTime) {
+                this.markChanged(topic);
+            }
+        }
+
+        // stocks that are changed while publishing are published next time
+        Topic pendingTopic;
+        while ((pendingTopic = this.pendingTopics.poll()) != null) {
+            pendingTopic.pending.set(false);
+            this.publishedTopics.add(pendingTopic);
+        }
+
+        try {
+            WindowStatistics statistics = new WindowStatistics();
+            for (Topic topic: this.publishedTopics) {
+                this.publishTopic(topic, currentTime, statistics);
+            }
+        } finally {
+            this.publishedTopics.clear();
+        }
+
+        if (!this.indexListeners.isEmpty()) {
+            this.publishIndex(currentTime);
+        }
+    }
+
+    /**
+     * Calculate analytics of single stock and push them to its listeners
+     *
+     * @param topic Topic of the stock
+     * @param currentTime Current time in milliseconds
+     * @param statistics Reusable holder of window statistics
+     */
+    private void publishTopic(Topic topic, long currentTime, WindowStatistics statistics) {
+        StockEntry entry = this.stocksMap.get(topic.stockSymbol);
+        if (entry == null) {
+            return;
+        }
+
+        StockAnalytics stockAnalytics;
+        try {
+            stockAnalytics = TradesManager.calculateStockAnalytics(entry, currentTime, statistics);
+        } catch (Throwable e) {
+            // expiry time is not moved, so the stock is retried next time
+            return;
+        }
+        topic.expiryTime = entry.getTradesManager().getCalcIntervalExpiryTime(currentTime);
+        for (StockAnalyticsListener listener: topic.listeners) {
+            try {
+                listener.onStockAnalytics(stockAnalytics);
+            } catch (Throwable e) {
+                // failing listener must not stop other listeners
+            }
+        }
+    }
+
+    /**
+     * Push value of the index to its listeners if it is changed or publishing is required
+     *
+     * @param currentTime Current time in milliseconds
+     */
+    private void publishIndex(long currentTime) {
+        double indexValue;
+        try {
+            indexValue = this.allSharesIndex.getValue(currentTime);
+        } catch (Throwable e) {
+            // required publishing is kept for next time
+            return;
+        }
+        boolean publishRequired = this.indexPublishRequired;
+        this.indexPublishRequired = false;
+        if (publishRequired || Double.compare(indexValue, this.lastIndexValue) != 0) {
+            this.lastIndexValue = indexValue;
+            for (AllSharesIndexListener listener: this.indexListeners) {
+                try {
+                    listener.onAllSharesIndex(currentTime, indexValue);
+                } catch (Throwable e) {
+                    // failing listener must not stop other listeners
+                }
+            }
+        }
+    }
+
+    /**
+     * Listeners and publishing state of single stock
+     */
+    static final class Topic {
+        /** Symbol of the stock */
+        private final String stockSymbol;
+        /** Listeners of the stock */
+        private final CopyOnWriteArrayList<StockAnalyticsListener> listeners;
+        /** Set while the stock is in pending queue */
+        private final AtomicBoolean pending;
+        /** Time when published analytics expire */
+        private volatile long expiryTime;
+
+        Topic(String stockSymbol) {
+            this.stockSymbol = stockSymbol;
+            this.listeners = new CopyOnWriteArrayList<StockAnalyticsListener>();
+            this.pending = new AtomicBoolean();
+        }
+    }
+}
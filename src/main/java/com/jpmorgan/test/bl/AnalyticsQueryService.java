@@ -0,0 +1,370 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Asynchronous request/response service of stock analytics for many concurrent clients.<br/>
+ * Every query runs on its own virtual thread when the runtime supports them, otherwise on pool of platform threads
+ * of the size of available processors - queries never block, because reads of trades manager are lock free.
+ * <br/>
+ * Identical queries that arrive while the same query is computed are coalesced - they get the result of the
+ * computation in flight, so it may not include trades added while it runs, and each of them gets its own copy of
+ * {@link StockAnalytics}.<br/>
+ * Number of computations in flight is bounded. Query over the bound waits in bounded queue and starts when
+ * computation in flight completes, query over both bounds fails with {@link RejectedExecutionException}
+ * immediately, so callers never block and waiting queries cannot grow without limit.
+ */
+public class AnalyticsQueryService {
+    /** Trades manager that answers queries */
+    private final TradesManager tradesManager;
+    /** Executor of queries */
+    private final ExecutorService executor;
+    /** Set if queries run on virtual threads */
+    private final boolean virtualThreads;
+    /** Permits of computations in flight */
+    private final Semaphore admission;
+    /** Permits of queries waiting for computation permit */
+    private final Semaphore waitingSlots;
+    /** Queries waiting for computation permit */
+    private final ConcurrentLinkedQueue<Task> waitingQueries;
+    /** Computations in flight by query */
+    private final ConcurrentHashMap<Query, CompletableFuture<Object>> inFlight;
+    /** Number of queries that joined computation in flight */
+    private final AtomicLong coalescedQueries;
+    /** Number of queries rejected by admission */
+    private final AtomicLong rejectedQueries;
+
+    /**
+     * Construct query service that rejects queries over max computations in flight without waiting
+     *
+     * @param tradesManager Trades manager that answers queries. Cannot be <code>null</code>
+     * @param maxQueriesInFlight Max number of computations in flight. Must be positive value
+     */
+    public AnalyticsQueryService(TradesManager tradesManager, int maxQueriesInFlight) {
+        this(tradesManager, maxQueriesInFlight, 0);
+    }
+
+    /**
+     * Construct query service
+     *
+     * @param tradesManager Trades manager that answers queries. Cannot be <code>null</code>
+     * @param maxQueriesInFlight Max number of computations in flight. Must be positive value
+     * @param maxWaitingQueries Max number of queries waiting for computation in flight to complete.
+     *                          Cannot be negative value
+     */
+    public AnalyticsQueryService(TradesManager tradesManager, int maxQueriesInFlight, int maxWaitingQueries) {
+        super();
+
+        if (tradesManager == null) {
+            throw new RuntimeException("Trades manager cannot be null");
+        }
+
+        if (maxQueriesInFlight <= 0) {
+            throw new RuntimeException("Invalid max queries value");
+        }
+
+        if (maxWaitingQueries < 0) {
+            throw new RuntimeException("Invalid max waiting queries value");
+        }
+
+        this.tradesManager = tradesManager;
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = this.virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor();
+        this.admission = new Semaphore(maxQueriesInFlight);
+        this.waitingSlots = new Semaphore(maxWaitingQueries);
+        this.waitingQueries = new ConcurrentLinkedQueue<Task>();
+        this.inFlight = new ConcurrentHashMap<Query, CompletableFuture<Object>>();
+        this.coalescedQueries = new AtomicLong();
+        this.rejectedQueries = new AtomicLong();
+    }
+
+    /**
+     * Calculate stock price from all trades in past interval
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Price in pennies. Fails with {@link StockNotInitializedException} if stock is not found
+     */
+    public CompletableFuture<Integer> calculateStockPrice(String stockSymbol) {
+        return this.query(QueryType.StockPrice, stockSymbol);
+    }
+
+    /**
+     * Calculate dividend yield of given stock
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Dividend yield. Fails with {@link StockNotInitializedException} if stock is not found
+     */
+    public CompletableFuture<Float> calculateDividendYield(String stockSymbol) {
+        return this.query(QueryType.DividendYield, stockSymbol);
+    }
+
+    /**
+     * Calculate P/E Ratio of given stock
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return P/E Ratio. Fails with {@link StockNotInitializedException} if stock is not found
+     */
+    public CompletableFuture<Float> calculatePERatio(String stockSymbol) {
+        return this.query(QueryType.PERatio, stockSymbol);
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of given stock from single window
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Analytics. Fails with {@link StockNotInitializedException} if stock is not found
+     */
+    public CompletableFuture<StockAnalytics> getStockAnalytics(String stockSymbol) {
+        return this.query(QueryType.StockAnalytics, stockSymbol);
+    }
+
+    /**
+     * Stop accepting queries. Queries in flight are completed, waiting queries fail
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * @return <code>true</code> if queries run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    /**
+     * @return Number of queries that got result of identical computation in flight
+     */
+    public long getCoalescedQueriesCount() {
+        return this.coalescedQueries.get();
+    }
+
+    /**
+     * @return Number of queries rejected because too many computations were in flight and waiting
+     */
+    public long getRejectedQueriesCount() {
+        return this.rejectedQueries.get();
+    }
+
+    /**
+     * Join identical computation in flight or start new one
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> query(QueryType type, String stockSymbol) {
+        if (stockSymbol == null) {
+            CompletableFuture<T> result = new CompletableFuture<T>();
+            result.completeExceptionally(new StockNotInitializedException("Stock not initialized!", null));
+            return result;
+        }
+
+        Query query = new Query(type, stockSymbol);
+        CompletableFuture<Object> computation = new CompletableFuture<Object>();
+        CompletableFuture<Object> existing = this.inFlight.putIfAbsent(query, computation);
+        if (existing != null) {
+            this.coalescedQueries.incrementAndGet();
+            return (CompletableFuture<T>)existing.thenApply(query.type);
+        }
+
+        Task task = new Task(query, computation);
+        if (this.admission.tryAcquire()) {
+            this.execute(task);
+        } else if (this.waitingSlots.tryAcquire()) {
+            this.waitingQueries.offer(task);
+            // permit may be released before the query is queued
+            this.startWaitingQueries();
+        } else {
+            this.rejectedQueries.incrementAndGet();
+            this.fail(query, computation, new RejectedExecutionException("Too many queries in flight"));
+        }
+        return (CompletableFuture<T>)computation.thenApply(query.type);
+    }
+
+    /**
+     * Start waiting queries while there are free permits
+     */
+    private void startWaitingQueries() {
+        while (!this.waitingQueries.isEmpty() && this.admission.tryAcquire()) {
+            Task task = this.waitingQueries.poll();
+            if (task == null) {
+                // taken by other thread, the loop checks again queries queued meanwhile
+                this.admission.release();
+            } else {
+                this.waitingSlots.release();
+                this.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Execute the task that holds computation permit. The permit is released if the task is rejected
+     */
+    private void execute(Task task) {
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            this.admission.release();
+            this.fail(task.query, task.computation, e);
+        }
+    }
+
+    /**
+     * Run the query and complete its computation
+     */
+    private void compute(Query query, CompletableFuture<Object> computation) {
+        Object result;
+        try {
+            result = query.type.execute(this.tradesManager, query.stockSymbol);
+        } catch (Throwable e) {
+            this.admission.release();
+            this.fail(query, computation, e);
+            this.startWaitingQueries();
+            return;
+        }
+
+        // query that arrives from now on starts new computation
+        this.inFlight.remove(query, computation);
+        this.admission.release();
+        computation.complete(result);
+        this.startWaitingQueries();
+    }
+
+    /**
+     * Remove the computation and fail it
+     */
+    private void fail(Query query, CompletableFuture<Object> computation, Throwable e) {
+        this.inFlight.remove(query, computation);
+        computation.completeExceptionally(e);
+    }
+
+    /**
+     * @return Virtual thread per task executor, <code>null</code> if runtime doesn't support virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        // looked up by reflection, so the service runs also on runtime without virtual threads
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Pool of daemon platform threads
+     */
+    private static ExecutorService newPlatformThreadExecutor() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "analytics-query");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Supported queries. Query type maps result of the computation to result of single caller - every caller gets
+     * its own future, so one caller cannot complete result of others, and its own copy of mutable result.
+     */
+    private enum QueryType implements Function<Object, Object> {
+        StockPrice {
+            @Override
+            Object execute(TradesManager tradesManager, String stockSymbol) throws StockNotInitializedException {
+                return tradesManager.calculateStockPrice(stockSymbol);
+            }
+        },
+        DividendYield {
+            @Override
+            Object execute(TradesManager tradesManager, String stockSymbol) throws StockNotInitializedException {
+                return tradesManager.calculateDividendYield(stockSymbol);
+            }
+        },
+        PERatio {
+            @Override
+            Object execute(TradesManager tradesManager, String stockSymbol) throws StockNotInitializedException {
+                return tradesManager.calculatePERatio(stockSymbol);
+            }
+        },
+        StockAnalytics {
+            @Override
+            Object execute(TradesManager tradesManager, String stockSymbol) throws StockNotInitializedException {
+                return tradesManager.getStockAnalytics(stockSymbol);
+            }
+
+            @Override
+            public Object apply(Object result) {
+                return AnalyticsCache.copy((StockAnalytics)result);
+            }
+        };
+
+        @Override
+        public Object apply(Object result) {
+            return result;
+        }
+
+        /**
+         * Run the query on given trades manager
+         */
+        abstract Object execute(TradesManager tradesManager, String stockSymbol) throws StockNotInitializedException;
+    }
+
+    /**
+     * Computation of single query
+     */
+    private final class Task implements Runnable {
+        private final Query query;
+        private final CompletableFuture<Object> computation;
+
+        Task(Query query, CompletableFuture<Object> computation) {
+            this.query = query;
+            this.computation = computation;
+        }
+
+        @Override
+        public void run() {
+            compute(this.query, this.computation);
+        }
+    }
+
+    /**
+     * Key of coalesced queries
+     */
+    private static final class Query {
+        private final QueryType type;
+        private final String stockSymbol;
+
+        Query(QueryType type, String stockSymbol) {
+            this.type = type;
+            this.stockSymbol = stockSymbol;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type.hashCode() + this.stockSymbol.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Query)) {
+                return false;
+            }
+
+            Query query = (Query)obj;
+            return query.type == this.type && query.stockSymbol.equals(this.stockSymbol);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Candle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Bounded ring of OHLCV candles of single stock. Candles are built from trades as they are added, so reading
+ * candles doesn't touch raw trades. Candle is closed when its interval ends; slot of the oldest candle is
+ * reused by new candle. Intervals without trades have no candle.<br/>
+ * Ring supports single writer and multiple readers. Readers use optimistic read of {@link StampedLock}.
+ */
+final class CandleRing {
+    /** Length of candle interval in millis */
+    private final long interval;
+    /** Number of kept candles */
+    private final int candlesCount;
+    /** Candles as time buckets */
+    private final TimeBuckets.Level buckets;
+    /** Guards buckets update */
+    private final StampedLock lock;
+
+    /**
+     * Construct ring
+     *
+     * @param interval Length of candle interval in millis. Must be positive value
+     * @param candlesCount Number of kept candles. Must be positive value
+     */
+    CandleRing(long interval, int candlesCount) {
+        super();
+
+        if (interval <= 0) {
+            throw new RuntimeException("Invalid candle interval");
+        }
+
+        if (candlesCount <= 0) {
+            throw new RuntimeException("Invalid candles count");
+        }
+
+        this.interval = interval;
+        this.candlesCount = candlesCount;
+        this.buckets = new TimeBuckets.Level(interval, candlesCount);
+        this.lock = new StampedLock();
+    }
+
+    /**
+     * Add trade to its candle. Must be called by single thread at a time.
+     *
+     * @param dateTime When trade occurred
+     * @param quantity Quantity of the trade
+     * @param price Price of the trade
+     */
+    void add(long dateTime, int quantity, int price) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.buckets.add(dateTime, quantity, price);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Read all kept candles up to given time. Can be called by any thread.
+     *
+     * @param currentTime Current time. Candle that contains it is not closed
+     * @return Candles ordered by time, the oldest first
+     */
+    List<Candle> getCandles(long currentTime) {
+        long stamp = this.lock.tryOptimisticRead();
+        List<Candle> candles = this.readCandles(currentTime);
+        if (!this.lock.validate(stamp)) {
+            stamp = this.lock.readLock();
+            try {
+                candles = this.readCandles(currentTime);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        return candles;
+    }
+
+    /**
+     * @return Length of candle interval in millis
+     */
+    long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * @return Number of kept candles
+     */
+    int getCandlesCount() {
+        return this.candlesCount;
+    }
+
+    /**
+     * Read candles without validation of concurrent update
+     */
+    private List<Candle> readCandles(long currentTime) {
+        List<Candle> candles = new ArrayList<Candle>();
+        TimeBuckets.Accumulator accumulator = new TimeBuckets.Accumulator();
+        long lastStart = Math.floorDiv(currentTime, this.interval) * this.interval;
+        for (long start = lastStart - (this.candlesCount - 1) * this.interval; start <= lastStart;
+             start += this.interval) {
+            accumulator.reset();
+            this.buckets.accumulate(start, accumulator);
+            if (accumulator.count == 0) {
+                continue;
+            }
+
+            Candle candle = new Candle();
+            candle.setStartDateTime(start);
+            candle.setEndDateTime(start + this.interval);
+            candle.setOpenPrice(accumulator.open);
+            candle.setHighPrice(accumulator.high);
+            candle.setLowPrice(accumulator.low);
+            candle.setClosePrice(accumulator.close);
+            candle.setVolume(accumulator.quantitySum);
+            candle.setTradesCount(accumulator.count);
+            candle.setStockPrice(PriceArithmetic.averagePrice(accumulator.priceQuantitySumHigh,
+                                                              accumulator.priceQuantitySum, accumulator.quantitySum));
+            candle.setClosed(start != lastStart);
+            candles.add(candle);
+        }
+        return candles;
+    }
+}
@@ -0,0 +1,122 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.LatencySnapshot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies with log-linear buckets, the same layout as HDR histogram.<br/>
+ * Every power of two range is split to {@link #SUB_BUCKETS} linear buckets, so relative error of every
+ * recorded value is below 1 / {@link #SUB_BUCKETS} for the whole range of <code>long</code> values with fixed
+ * memory. Recording is single array increment without locking, snapshot is taken without stopping writers.
+ */
+final class LatencyHistogram {
+    /** Number of bits of linear sub bucket index */
+    private static final int SUB_BUCKET_BITS = 5;
+    /** Number of linear sub buckets of every power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Number of buckets that cover all non negative <code>long</code> values */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** Number of values in each bucket */
+    private final AtomicLongArray counts;
+    /** Sum of all values */
+    private final LongAdder sum;
+
+    /**
+     * Default constructor
+     */
+    LatencyHistogram() {
+        super();
+
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.sum = new LongAdder();
+    }
+
+    /**
+     * Record single value. Negative value is recorded as zero
+     *
+     * @param nanos Latency in nanos
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.sum.add(value);
+    }
+
+    /**
+     * Take snapshot of recorded values. Values that are recorded during the call may be partially included
+     *
+     * @return Count, mean and percentiles
+     */
+    LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        int maxBucket = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+            count += counts[i];
+            if (counts[i] != 0) {
+                maxBucket = i;
+            }
+        }
+
+        LatencySnapshot snapshot = new LatencySnapshot();
+        snapshot.setCount(count);
+        if (count == 0) {
+            return snapshot;
+        }
+
+        snapshot.setMeanNanos(this.sum.sum() / (double)count);
+        snapshot.setP50Nanos(percentile(counts, count, 0.5));
+        snapshot.setP90Nanos(percentile(counts, count, 0.9));
+        snapshot.setP99Nanos(percentile(counts, count, 0.99));
+        snapshot.setP999Nanos(percentile(counts, count, 0.999));
+        snapshot.setMaxNanos(upperBoundOf(maxBucket));
+        return snapshot;
+    }
+
+    /**
+     * Find upper bound of bucket that contains value at given percentile
+     */
+    private static long percentile(long[] counts, long count, double percentile) {
+        long rank = Math.max((long)Math.ceil(count * percentile), 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    /**
+     * @return Index of bucket of given non negative value
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The highest value that falls into given bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
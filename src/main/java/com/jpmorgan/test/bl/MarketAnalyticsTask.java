@@ -0,0 +1,61 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork join task that calculates analytics of range of stocks.
+ * Range is split in halves until it is small enough to be calculated by single thread.
+ */
+final class MarketAnalyticsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    /** Max number of stocks calculated without splitting */
+    private static final int THRESHOLD = 128;
+
+    /** Snapshot of all stocks */
+    private final StockEntry[] entries;
+    /** Calculated analytics, same index as entries */
+    private final StockAnalytics[] results;
+    /** First stock of the range */
+    private final int from;
+    /** End of the range (exclusive) */
+    private final int to;
+    /** Time for which analytics are calculated */
+    private final long currentTime;
+
+    /**
+     * Construct task for given range of stocks
+     *
+     * @param entries Snapshot of all stocks
+     * @param results Array for calculated analytics
+     * @param from First stock of the range
+     * @param to End of the range (exclusive)
+     * @param currentTime Time for which analytics are calculated
+     */
+    MarketAnalyticsTask(StockEntry[] entries, StockAnalytics[] results, int from, int to, long currentTime) {
+        super();
+
+        this.entries = entries;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.currentTime = currentTime;
+    }
+
+    @Override
+    protected void compute() {
+        if (this.to - this.from <= THRESHOLD) {
+            WindowStatistics statistics = new WindowStatistics();
+            for (int i = this.from; i < this.to; i++) {
+                this.results[i] = TradesManager.calculateStockAnalytics(this.entries[i], this.currentTime, statistics);
+            }
+            return;
+        }
+
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new MarketAnalyticsTask(this.entries, this.results, this.from, middle, this.currentTime),
+                  new MarketAnalyticsTask(this.entries, this.results, middle, this.to, this.currentTime));
+    }
+}
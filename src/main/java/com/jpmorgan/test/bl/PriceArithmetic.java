@@ -0,0 +1,83 @@
+package com.jpmorgan.test.bl;
+
+/**
+ * Exact arithmetic of sums of price * quantity.<br/>
+ * Single price * quantity of int values always fits in <code>long</code>, but their sum doesn't, so sums are
+ * kept as 128 bit values in two <code>long</code> words - low word is unsigned and overflow of the low word is
+ * carried to the high word. Sums are only added and subtracted, so wrapped words still give exact difference.
+ * <br/>
+ * Average price is calculated by exact 128 / 64 bit division rounded half up to whole penny, without
+ * floating point and without {@link java.math.BigInteger}.
+ */
+final class PriceArithmetic {
+    /** Price of window without trades */
+    static final int EMPTY_PRICE = 0;
+
+    /**
+     * Utility class
+     */
+    private PriceArithmetic() {
+        super();
+    }
+
+    /**
+     * Carry of unsigned addition of low words
+     *
+     * @param low Low word of the sum, after addition
+     * @param addend Added low word
+     * @return 1 if the addition overflowed, 0 otherwise
+     */
+    static long carry(long low, long addend) {
+        return Long.compareUnsigned(low, addend) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Borrow of unsigned subtraction of low words
+     *
+     * @param minuend Low word that is subtracted from
+     * @param subtrahend Subtracted low word
+     * @return 1 if the subtraction underflowed, 0 otherwise
+     */
+    static long borrow(long minuend, long subtrahend) {
+        return Long.compareUnsigned(minuend, subtrahend) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Calculate average price weighted by quantity
+     *
+     * @param priceQuantitySumHigh High word of sum of price * quantity
+     * @param priceQuantitySumLow Low word of sum of price * quantity
+     * @param quantitySum Sum of quantity
+     * @return Price in pennies rounded half up, {@link #EMPTY_PRICE} if quantity sum is zero
+     */
+    static int averagePrice(long priceQuantitySumHigh, long priceQuantitySumLow, long quantitySum) {
+        if (quantitySum <= 0) {
+            return EMPTY_PRICE;
+        }
+
+        long quotient;
+        long remainder;
+        if (priceQuantitySumHigh == 0 && priceQuantitySumLow >= 0) {
+            quotient = priceQuantitySumLow / quantitySum;
+            remainder = priceQuantitySumLow % quantitySum;
+        } else {
+            // average is not greater than max price, so high word is smaller than divisor and quotient fits
+            remainder = priceQuantitySumHigh;
+            quotient = 0;
+            for (int bit = 63; bit >= 0; bit--) {
+                boolean overflow = remainder < 0;
+                remainder = (remainder << 1) | ((priceQuantitySumLow >>> bit) & 1);
+                quotient <<= 1;
+                if (overflow || Long.compareUnsigned(remainder, quantitySum) >= 0) {
+                    remainder -= quantitySum;
+                    quotient |= 1;
+                }
+            }
+        }
+
+        if (remainder >= quantitySum - remainder) {
+            quotient++;
+        }
+        return (int)Math.min(quotient, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,376 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trades manager that splits stocks to partitions. Every partition has its own {@link TradesManager} that is
+ * accessed only by single worker thread, so trades of different partitions never touch shared data and locks
+ * of stocks are never contended.<br/>
+ * Stock is assigned to partition by hash code of its symbol, the same as
+ * {@link com.jpmorgan.test.pojo.Stock#getSymbolHashCode()}. Trades and queries are passed to the worker by lock free
+ * multi producer queue. Trades are added asynchronously, queries wait for the result - query sees all trades that
+ * are added by the same thread before. Market wide calculations are split to all partitions and combined.
+ */
+public class ShardedTradesManager {
+    /** Partitions of stocks */
+    private final Partition[] partitions;
+
+    /**
+     * Construct manager with given number of partitions and default retention policy
+     *
+     * @param partitionsCount Number of partitions and worker threads. Must be positive value
+     */
+    public ShardedTradesManager(int partitionsCount) {
+        this(partitionsCount, StockTradesManager.CALC_TIME, StockTradesManager.DEFAULT_MAX_TRADES, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Construct manager with given number of partitions, retention policy and time source
+     *
+     * @param partitionsCount Number of partitions and worker threads. Must be positive value
+     * @param retentionTime Trades older than this time (in millis) are evicted. Cannot be shorter than 15 minutes
+     * @param maxTradesPerStock Maximum number of trades that are kept for single stock. Must be positive value
+     * @param timeSource Source of current time. Cannot be <code>null</code>
+     */
+    public ShardedTradesManager(int partitionsCount, long retentionTime, int maxTradesPerStock,
+                                TimeSource timeSource) {
+        super();
+
+        if (partitionsCount <= 0) {
+            throw new RuntimeException("Invalid partitions count");
+        }
+
+        this.partitions = new Partition[partitionsCount];
+        for (int i = 0; i < partitionsCount; i++) {
+            this.partitions[i] = new Partition(new TradesManager(retentionTime, maxTradesPerStock, timeSource),
+                                               "trades-partition-" + i);
+        }
+    }
+
+    /**
+     * Add new trade. Trade is stamped with current time and added asynchronously by worker of its partition.
+     *
+     * @param stockSymbol Stock symbol. Cannot be <code>null</code>
+     * @param tradeType Type of the trade. Cannot be <code>null</code>
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @throws StockNotInitializedException if Stock is not found
+     * @throws RuntimeException if some of the arguments is not valid
+     */
+    public void addTrade(final String stockSymbol, final TradeType tradeType, int quantity, int totalPrice,
+                         int dividend) throws StockNotInitializedException {
+        final Partition partition = this.getPartition(stockSymbol);
+        final Trade trade = new Trade(tradeType, partition.tradesManager.getTimeSource().currentTimeMillis(),
+                                      quantity, totalPrice, dividend);
+        if (!trade.validate()) {
+            throw new RuntimeException("Invalid argument(s)");
+        }
+
+        // stock lookup is lock free, so it is checked by calling thread
+        partition.tradesManager.getStock(stockSymbol);
+
+        // stock is checked before, so nobody waits for the result
+        partition.submit(new Task<Void>() {
+            @Override
+            Void call() throws StockNotInitializedException {
+                partition.tradesManager.addTrade(stockSymbol, trade.getTradeType(), trade.getDateTime(),
+                                                 trade.getQuantity(), trade.getTotalPrice(), trade.getDividend());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Adds or updates stock. Returns after the stock is updated by worker of its partition.
+     *
+     * @param stockSymbol Stock symbol. Cannot be null
+     * @param stockType Type of the stock. Cannot be null
+     * @param parValue Par value. Must be positive value
+     * @param fixedDividend Fixed dividend. In case of {@link StockType#Preferred preferred} type must be positive
+     */
+    public void addOrUpdateStock(final String stockSymbol, final StockType stockType, final int parValue,
+                                 final int fixedDividend) {
+        final Partition partition = this.getPartition(stockSymbol);
+        try {
+            this.call(partition, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    partition.tradesManager.addOrUpdateStock(stockSymbol, stockType, parValue, fixedDividend);
+                    return null;
+                }
+            });
+        } catch (StockNotInitializedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Calculate stock price from all trades in past interval
+     * @param stockSymbol Symbol of the stock
+     * @return Calculated price in pennies
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public int calculateStockPrice(final String stockSymbol) throws StockNotInitializedException {
+        final Partition partition = this.getPartition(stockSymbol);
+        return this.call(partition, new Callable<Integer>() {
+            @Override
+            public Integer call() throws StockNotInitializedException {
+                return partition.tradesManager.calculateStockPrice(stockSymbol);
+            }
+        });
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of given stock
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Calculated analytics
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public StockAnalytics getStockAnalytics(final String stockSymbol) throws StockNotInitializedException {
+        final Partition partition = this.getPartition(stockSymbol);
+        return this.call(partition, new Callable<StockAnalytics>() {
+            @Override
+            public StockAnalytics call() throws StockNotInitializedException {
+                return partition.tradesManager.getStockAnalytics(stockSymbol);
+            }
+        });
+    }
+
+    /**
+     * Calculates GBCE All Shares Index. Geometric mean of every partition is calculated by its worker in parallel
+     * and means are combined weighted by number of stocks.
+     *
+     * @return Calculated value
+     */
+    public double calculateGBCEAllSharesIndex() {
+        // scatter
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[this.partitions.length];
+        final double[] logSums = new double[this.partitions.length];
+        final int[] stocksCounts = new int[this.partitions.length];
+        for (int i = 0; i < this.partitions.length; i++) {
+            final int index = i;
+            final Partition partition = this.partitions[i];
+            Task<Void> task = new Task<Void>() {
+                @Override
+                Void call() {
+                    stocksCounts[index] = partition.tradesManager.getStocksCount();
+                    logSums[index] = stocksCounts[index] == 0 ? 0 :
+                            Math.log(partition.tradesManager.calculateGBCEAllSharesIndex()) * stocksCounts[index];
+                    return null;
+                }
+            };
+            partition.submit(task);
+            futures[i] = task.future;
+        }
+
+        // gather
+        this.await(CompletableFuture.allOf(futures));
+        double logSum = 0;
+        int stocksCount = 0;
+        for (int i = 0; i < this.partitions.length; i++) {
+            logSum += logSums[i];
+            stocksCount += stocksCounts[i];
+        }
+
+        if (stocksCount == 0) {
+            return Double.NaN;
+        }
+
+        return Math.exp(logSum / stocksCount);
+    }
+
+    /**
+     * Stop all workers. Already submitted trades and queries are processed first.
+     */
+    public void shutdown() {
+        for (Partition partition: this.partitions) {
+            partition.running = false;
+            LockSupport.unpark(partition.worker);
+        }
+    }
+
+    /**
+     * @return Number of partitions
+     */
+    public int getPartitionsCount() {
+        return this.partitions.length;
+    }
+
+    /**
+     * Find partition of given stock
+     *
+     * @param stockSymbol Stock symbol
+     * @return Partition. The first partition for <code>null</code> symbol, its trades manager rejects it
+     */
+    private Partition getPartition(String stockSymbol) {
+        if (stockSymbol == null) {
+            return this.partitions[0];
+        }
+
+        return this.partitions[Math.floorMod(stockSymbol.hashCode(), this.partitions.length)];
+    }
+
+    /**
+     * Run given task by worker of the partition and wait for the result
+     */
+    private <T> T call(Partition partition, final Callable<T> callable) throws StockNotInitializedException {
+        Task<T> task = new Task<T>() {
+            @Override
+            T call() throws Exception {
+                return callable.call();
+            }
+        };
+        partition.submit(task);
+
+        try {
+            return this.await(task.future);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof StockNotInitializedException) {
+                throw (StockNotInitializedException)e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the future. Failure of the task is thrown as runtime exception
+     */
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Task for the worker. Its future is always completed - by the result, by failure of the task or when
+     * the task is dropped by shut down worker
+     */
+    private abstract static class Task<T> implements Runnable {
+        /** Result of the task */
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        /**
+         * Compute result of the task
+         */
+        abstract T call() throws Exception;
+
+        @Override
+        public void run() {
+            try {
+                this.future.complete(this.call());
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Trades manager of single partition together with its worker thread
+     */
+    private static final class Partition implements Runnable {
+        /** Number of empty polls before worker is parked */
+        private static final int SPINS = 100;
+
+        /** Trades manager that is accessed only by the worker */
+        private final TradesManager tradesManager;
+        /** Tasks for the worker */
+        private final ConcurrentLinkedQueue<Task<?>> tasks;
+        /** Set while the worker is parked or going to park */
+        private final AtomicBoolean parked;
+        /** Worker thread */
+        private final Thread worker;
+        /** Cleared when worker should stop */
+        private volatile boolean running;
+
+        Partition(TradesManager tradesManager, String name) {
+            this.tradesManager = tradesManager;
+            this.tasks = new ConcurrentLinkedQueue<Task<?>>();
+            this.parked = new AtomicBoolean();
+            this.running = true;
+            this.worker = new Thread(this, name);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        /**
+         * Pass task to the worker. Never blocks.
+         *
+         * @throws RuntimeException If the worker is shut down
+         */
+        void submit(Task<?> task) {
+            if (!this.running) {
+                throw new RuntimeException("Trades manager is shut down");
+            }
+
+            this.tasks.offer(task);
+            // worker may have stopped after the check - task is failed by whoever removes it from the queue
+            if (!this.running && this.tasks.remove(task)) {
+                throw new RuntimeException("Trades manager is shut down");
+            }
+            if (this.parked.get() && this.parked.compareAndSet(true, false)) {
+                LockSupport.unpark(this.worker);
+            }
+        }
+
+        @Override
+        public void run() {
+            int spins = 0;
+            while (true) {
+                Task<?> task = this.tasks.poll();
+                if (task != null) {
+                    spins = 0;
+                    // task never fails, its failure completes the future
+                    task.run();
+                    continue;
+                }
+
+                if (!this.running) {
+                    this.failRemainingTasks();
+                    return;
+                }
+
+                if (++spins < SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+
+                // task offered after the flag is set unparks the worker
+                this.parked.set(true);
+                if (this.tasks.isEmpty() && this.running) {
+                    LockSupport.park(this);
+                }
+                this.parked.set(false);
+            }
+        }
+
+        /**
+         * Fail tasks that are offered while the worker is stopping, so nobody waits for them
+         */
+        private void failRemainingTasks() {
+            Task<?> task;
+            while ((task = this.tasks.poll()) != null) {
+                task.future.completeExceptionally(new RuntimeException("Trades manager is shut down"));
+            }
+        }
+    }
+}
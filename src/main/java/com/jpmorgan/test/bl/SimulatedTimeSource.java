@@ -0,0 +1,60 @@
+package com.jpmorgan.test.bl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time source that is moved forward explicitly. Time never goes back, so calculation interval
+ * and retention time behave the same way as with wall clock.
+ */
+public class SimulatedTimeSource implements TimeSource {
+    /** Current time in millis */
+    private AtomicLong time;
+
+    /**
+     * Construct time source with given start time
+     *
+     * @param startTime Start time in millis
+     */
+    public SimulatedTimeSource(long startTime) {
+        super();
+
+        this.time = new AtomicLong(startTime);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return this.time.get();
+    }
+
+    /**
+     * Move time forward to given time. Time that is before current time is ignored.
+     *
+     * @param time New time in millis
+     * @return Current time after the move
+     */
+    public long advanceTo(long time) {
+        while (true) {
+            long currentTime = this.time.get();
+            if (time <= currentTime) {
+                return currentTime;
+            }
+            if (this.time.compareAndSet(currentTime, time)) {
+                return time;
+            }
+        }
+    }
+
+    /**
+     * Move time forward by given period
+     *
+     * @param period Period in millis. Cannot be negative
+     * @return Current time after the move
+     */
+    public long advanceBy(long period) {
+        if (period < 0) {
+            throw new RuntimeException("Time cannot go back");
+        }
+
+        return this.time.addAndGet(period);
+    }
+}
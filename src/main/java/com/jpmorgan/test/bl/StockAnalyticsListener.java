@@ -0,0 +1,18 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+
+/**
+ * Listener of analytics updates of single stock.
+ *
+ * @see TradesManager#subscribe(String, StockAnalyticsListener)
+ */
+public interface StockAnalyticsListener {
+    /**
+     * Called by publisher thread when analytics of the stock changed. Listener should return quickly -
+     * it delays updates of other listeners, but never delays adding of trades.
+     *
+     * @param stockAnalytics Current analytics of the stock
+     */
+    void onStockAnalytics(StockAnalytics stockAnalytics);
+}
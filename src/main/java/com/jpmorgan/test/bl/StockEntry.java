@@ -0,0 +1,104 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Stock;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable registry entry that is holding stock together with its trades manager.<br/>
+ * Stock reference data is never modified in place - update creates new entry with new stock
+ * and the same id, trades manager, index member and topic. The only mutable parts are slot of
+ * {@link AnalyticsCache cached analytics}, which is empty in new entry, and flag of replaced entry.
+ */
+final class StockEntry {
+    /** Dense id of the stock */
+    private final int stockId;
+    /** Stock reference data */
+    private final Stock stock;
+    /** Trades of the stock */
+    private final StockTradesManager tradesManager;
+    /** Stock as member of GBCE All Share Index */
+    private final AllSharesIndex.Member indexMember;
+    /** Listeners of the stock */
+    private final AnalyticsPublisher.Topic topic;
+    /** Cached analytics of the stock */
+    private final AtomicReference<AnalyticsCache.Value> cachedAnalytics;
+    /** Set when update of the stock replaces the entry */
+    private volatile boolean replaced;
+
+    /**
+     * Construct entry
+     * @param stockId Dense id of the stock
+     * @param stock Stock reference data
+     * @param tradesManager Trades of the stock
+     * @param indexMember Stock as member of GBCE All Share Index
+     * @param topic Listeners of the stock
+     */
+    StockEntry(int stockId, Stock stock, StockTradesManager tradesManager, AllSharesIndex.Member indexMember,
+               AnalyticsPublisher.Topic topic) {
+        super();
+
+        this.stockId = stockId;
+        this.stock = stock;
+        this.tradesManager = tradesManager;
+        this.indexMember = indexMember;
+        this.topic = topic;
+        this.cachedAnalytics = AnalyticsCache.newSlot();
+    }
+
+    /**
+     * @return Dense id of the stock
+     */
+    int getStockId() {
+        return this.stockId;
+    }
+
+    /**
+     * @return Stock reference data
+     */
+    Stock getStock() {
+        return this.stock;
+    }
+
+    /**
+     * @return Trades of the stock
+     */
+    StockTradesManager getTradesManager() {
+        return this.tradesManager;
+    }
+
+    /**
+     * @return Stock as member of GBCE All Share Index
+     */
+    AllSharesIndex.Member getIndexMember() {
+        return this.indexMember;
+    }
+
+    /**
+     * @return Listeners of the stock
+     */
+    AnalyticsPublisher.Topic getTopic() {
+        return this.topic;
+    }
+
+    /**
+     * @return Slot of cached analytics
+     */
+    AtomicReference<AnalyticsCache.Value> getCachedAnalytics() {
+        return this.cachedAnalytics;
+    }
+
+    /**
+     * Mark the entry as replaced by update of the stock
+     */
+    void markReplaced() {
+        this.replaced = true;
+    }
+
+    /**
+     * @return <code>true</code> if update of the stock replaced the entry
+     */
+    boolean isReplaced() {
+        return this.replaced;
+    }
+}
@@ -0,0 +1,78 @@
+package com.jpmorgan.test.bl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Flat table of stocks indexed by dense int id. Ids are handed out once per symbol in order 0, 1, 2 ..., so
+ * lookup by id is single array load instead of hashing and comparing the symbol.<br/>
+ * Table grows by copying under lock, entries are set under the same lock, so no update is lost by growing.
+ * Readers don't take any lock - elements are read with volatile semantics, so reader that got id from
+ * {@link TradesManager#addOrUpdateStock} sees the entry.
+ */
+final class StockIdTable {
+    /** Initial capacity of the table */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Next id to hand out */
+    private final AtomicInteger nextId;
+    /** Guards growing and setting of entries */
+    private final Object lock;
+    /** Entries by id */
+    private volatile AtomicReferenceArray<StockEntry> entries;
+
+    /**
+     * Default constructor
+     */
+    StockIdTable() {
+        super();
+
+        this.nextId = new AtomicInteger();
+        this.lock = new Object();
+        this.entries = new AtomicReferenceArray<StockEntry>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return New unique id
+     */
+    int nextId() {
+        return this.nextId.getAndIncrement();
+    }
+
+    /**
+     * Set entry of given id. Table grows if needed
+     *
+     * @param entry Entry with its id
+     */
+    void set(StockEntry entry) {
+        int id = entry.getStockId();
+        synchronized (this.lock) {
+            AtomicReferenceArray<StockEntry> entries = this.entries;
+            if (id >= entries.length()) {
+                int capacity = entries.length();
+                while (capacity <= id) {
+                    capacity <<= 1;
+                }
+
+                AtomicReferenceArray<StockEntry> grown = new AtomicReferenceArray<StockEntry>(capacity);
+                for (int i = 0; i < entries.length(); i++) {
+                    grown.lazySet(i, entries.get(i));
+                }
+                entries = grown;
+                this.entries = grown;
+            }
+            entries.set(id, entry);
+        }
+    }
+
+    /**
+     * Get entry of given id
+     *
+     * @param id Stock id
+     * @return Entry or <code>null</code> if there is no stock with such id
+     */
+    StockEntry get(int id) {
+        AtomicReferenceArray<StockEntry> entries = this.entries;
+        return id >= 0 && id < entries.length() ? entries.get(id) : null;
+    }
+}
@@ -1,90 +1,582 @@
 package com.jpmorgan.test.bl;
 
+import com.jpmorgan.test.pojo.Candle;
 import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+import com.jpmorgan.test.pojo.TradesAggregate;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
 
 /**
- * Class is holding information about all trades that are done for single stock
+ * Class is holding information about all trades that are done for single stock.<br/>
+ * Trades are kept in {@link TradesRingBuffer columnar ring buffer} together with cumulative sums of
+ * price * quantity and quantity, so stock price calculation doesn't need to walk all trades.<br/>
+ * Trades older than retention time are evicted lazily on write (or by {@link #evictTrades()}) and number of
+ * trades is limited by hard cap, so memory stays bounded for long running processes.<br/>
+ * Every trade gets sequence number from per stock sequencer, so trades that occurred in the same millisecond
+ * are all kept and ordered by time and sequence number.<br/>
+ * Trades are also aggregated in {@link TimeBuckets time buckets}, so windows other than calculation interval
+ * are answered without raw trades, even when they are longer than retention time. Recent OHLCV
+ * {@link CandleRing candles} are built the same way.<br/>
+ * Writers are serialized by spin lock, so only single writer appends to the trades buffer at a time.
+ * Readers don't take any lock and never block appending writers.<br/>
+ * Trade can be added by its values - all trade data are kept in primitive fields and columns, so such add
+ * doesn't allocate once the buffers are warmed up.
  */
 public class StockTradesManager {
     /** Time frame that is used to calculate Stock price */
-    private static final long CALC_TIME = 15 * 60 * 1000;
+    static final long CALC_TIME = 15 * 60 * 1000;
+    /** Default maximum number of trades that are kept for single stock */
+    static final int DEFAULT_MAX_TRADES = 1000000;
+    /** Max length of window that can be {@link #getTradesAggregate(long) aggregated} */
+    public static final long MAX_AGGREGATE_WINDOW = TimeBuckets.MAX_WINDOW;
+    /** Default length of candle interval */
+    static final long DEFAULT_CANDLE_INTERVAL = 60 * 1000;
+    /** Default number of kept candles */
+    static final int DEFAULT_CANDLES_COUNT = 60;
+    /** Number of optimistic attempts of consistent read before reader takes the writer lock */
+    private static final int CONSISTENT_READ_ATTEMPTS = 16;
     /** Main data holder for trades */
-    private TreeSet<Trade> tradesSet;
-    /** Lock object for multiple readers and single writer */
-    private ReadWriteLock readWriteLock;
+    private TradesRingBuffer tradesBuffer;
+    /** Spin lock that allows single writer at a time */
+    private AtomicBoolean writerLock;
+    /** Number of writer lock acquisitions that had to wait */
+    private LongAdder contendedWrites;
+    /** Time spent waiting for writer lock in nanos */
+    private LongAdder writerLockWaitNanos;
+    /** Trades older than this time frame are evicted */
+    private long retentionTime;
+    /** Maximum number of trades that are kept */
+    private int maxTrades;
+    /** Type of the last recorded trade, <code>null</code> if there are no trades. Kept even when evicted */
+    private TradeType lastTradeType;
+    /** When the last recorded trade occurred */
+    private long lastTradeDateTime;
+    /** Quantity of the last recorded trade */
+    private int lastTradeQuantity;
+    /** Total price of the last recorded trade */
+    private int lastTradeTotalPrice;
+    /** Dividend of the last recorded trade */
+    private int lastTradeDividend;
+    /** Sequence number of the last recorded trade */
+    private long lastTradeSequence;
+    /** Guards update of the last trade fields */
+    private StampedLock lastTradeLock;
+    /** Number of all evicted trades */
+    private volatile long evictedTradesCount;
+    /** Sequence number of the last added trade */
+    private volatile long sequence;
+    /** Bumped when writer takes the lock and again when it releases it, so it is odd while trades change */
+    private volatile long version;
+    /** Source of current time */
+    private TimeSource timeSource;
+    /** Trades aggregated in time buckets. Created with the first trade */
+    private volatile TimeBuckets timeBuckets;
+    /** Recent candles. Created with the first trade */
+    private volatile CandleRing candles;
+    /** Length of candle interval */
+    private volatile long candleInterval = DEFAULT_CANDLE_INTERVAL;
+    /** Number of kept candles */
+    private volatile int candlesCount = DEFAULT_CANDLES_COUNT;
 
     /**                                                                t
      * Default constructor.
      */
     public StockTradesManager() {
+        this(CALC_TIME, DEFAULT_MAX_TRADES);
+    }
+
+    /**
+     * Construct trades manager with given retention policy
+     *
+     * @param retentionTime Trades older than this time (in millis) are evicted. Cannot be shorter than calculation
+     *                      interval
+     * @param maxTrades Maximum number of trades that are kept. Must be positive value
+     */
+    public StockTradesManager(long retentionTime, int maxTrades) {
+        this(retentionTime, maxTrades, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Construct trades manager with given retention policy and time source
+     *
+     * @param retentionTime Trades older than this time (in millis) are evicted. Cannot be shorter than calculation
+     *                      interval
+     * @param maxTrades Maximum number of trades that are kept. Must be positive value
+     * @param timeSource Source of current time for calculation interval and retention. Cannot be <code>null</code>
+     */
+    public StockTradesManager(long retentionTime, int maxTrades, TimeSource timeSource) {
         super();
 
-        this.tradesSet = new TreeSet<Trade>(new Comparator<Trade>() {
-            @Override
-            public int compare(Trade o1, Trade o2) {
-                if (o1.getDateTime() > o2.getDateTime()) {
-                    return 1;
-                }
-                if (o1.getDateTime() < o2.getDateTime()) {
-                    return -1;
-                }
-                return 0;
-            }
-        });
+        if (retentionTime < CALC_TIME) {
+            throw new RuntimeException("Retention time cannot be shorter than calculation interval");
+        }
+
+        if (maxTrades <= 0) {
+            throw new RuntimeException("Invalid max trades value");
+        }
+
+        if (timeSource == null) {
+            throw new RuntimeException("Time source cannot be null");
+        }
 
-        this.readWriteLock = new ReentrantReadWriteLock();
+        this.timeSource = timeSource;
+        this.retentionTime = retentionTime;
+        this.maxTrades = maxTrades;
+        this.tradesBuffer = new TradesRingBuffer();
+        this.writerLock = new AtomicBoolean();
+        this.contendedWrites = new LongAdder();
+        this.writerLockWaitNanos = new LongAdder();
+        this.lastTradeLock = new StampedLock();
     }
 
     /**
-     * Add new trade
+     * Add new trade. Sequence number of the trade is set.
      * @param trade value to add
      */
     public void addTrade(Trade trade) {
-        Lock lock = this.readWriteLock.writeLock();
+        this.lockWriter();
         try {
-            lock.lock();
-            this.tradesSet.add(trade);
+            this.appendTrade(trade);
+            this.trimTrades();
         } finally {
-            lock.unlock();
+            this.unlockWriter();
+        }
+    }
+
+    /**
+     * Add new trade given by its values. No trade object is created, so the call doesn't allocate.
+     *
+     * @param tradeType Type of the trade
+     * @param dateTime When trade occurred
+     * @param quantity Quantity of the trade
+     * @param totalPrice Total price of the trade
+     * @param dividend Dividend of the trade
+     * @return Sequence number of the trade
+     */
+    public long addTrade(TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
+        this.lockWriter();
+        try {
+            long sequence = this.appendTrade(tradeType, dateTime, quantity, totalPrice, dividend);
+            this.trimTrades();
+            return sequence;
+        } finally {
+            this.unlockWriter();
+        }
+    }
+
+    /**
+     * Add all given trades under single writer lock acquisition. Sequence numbers of the trades are set.
+     * @param trades values to add
+     */
+    public void addTrades(List<Trade> trades) {
+        this.lockWriter();
+        try {
+            for (Trade trade: trades) {
+                this.appendTrade(trade);
+            }
+            this.trimTrades();
+        } finally {
+            this.unlockWriter();
         }
     }
 
     /**
      * Prepare iterator with all Trades that occurred within calculation interval.
+     * Iterator is reading {@link #getCalcIntervalSnapshot() snapshot}, so it is not affected by concurrent writers.
      *
      * @return All Trades for calculation
      */
     public Iterator<Trade> getAllTradesInCalcInterval() {
-        Trade trade = new Trade();
-        trade.setDateTime(System.currentTimeMillis() - CALC_TIME);
+        return this.getCalcIntervalSnapshot().iterator();
+    }
 
-        Lock lock = this.readWriteLock.readLock();
+    /**
+     * Take immutable snapshot of all trades that occurred within calculation interval.
+     * Trades are not copied.
+     *
+     * @return Snapshot of trades for calculation
+     */
+    public TradesSnapshot getCalcIntervalSnapshot() {
+        return this.tradesBuffer.snapshot(this.timeSource.currentTimeMillis() - CALC_TIME);
+    }
+
+    /**
+     * Calculate stock price from all trades in calculation interval.<br/>
+     * Start of the interval is found by binary search, sums are taken from cumulative sums. Price is divided
+     * exactly from 128 bit sums, so it doesn't overflow.
+     *
+     * @return Calculated price in pennies rounded half up, zero if there are no trades in calculation interval
+     */
+    public int calculateStockPrice() {
+        return this.calculateStockPrice(this.timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Calculate stock price from all trades in calculation interval that ends at given time
+     *
+     * @param currentTime End of calculation interval
+     * @return Calculated price in pennies
+     */
+    int calculateStockPrice(long currentTime) {
+        return this.tradesBuffer.getStockPrice(currentTime - CALC_TIME);
+    }
+
+    /**
+     * Read sums of all trades in calculation interval that ends at given time
+     *
+     * @param currentTime End of calculation interval
+     * @param statistics Holder that is filled with the sums
+     */
+    void getCalcIntervalStatistics(long currentTime, WindowStatistics statistics) {
+        this.tradesBuffer.getWindowStatistics(currentTime - CALC_TIME, statistics);
+    }
+
+    /**
+     * Read sums of all trades in calculation interval together with the last trade, both from the same version
+     * of trades, so the last trade is counted in the sums if it is in the interval. Read is retried while
+     * trades change and the writer lock is taken after few failed attempts, so reader is not starved by steady
+     * stream of trades.
+     *
+     * @param currentTime End of calculation interval
+     * @param statistics Holder that is filled with the sums
+     * @return Last trade that is recorded or <code>null</code> if there are no trades
+     */
+    Trade readCalcIntervalStatistics(long currentTime, WindowStatistics statistics) {
+        for (int attempt = 0; attempt < CONSISTENT_READ_ATTEMPTS; attempt++) {
+            long version = this.version;
+            if ((version & 1) == 0) {
+                this.getCalcIntervalStatistics(currentTime, statistics);
+                Trade lastTrade = this.findLastTrade();
+                if (version == this.version) {
+                    return lastTrade;
+                }
+            }
+            Thread.yield();
+        }
+
+        this.lockWriter();
+        try {
+            this.getCalcIntervalStatistics(currentTime, statistics);
+            return this.findLastTrade();
+        } finally {
+            this.unlockWriter();
+        }
+    }
+
+    /**
+     * Aggregate all trades in window of given length that ends now.<br/>
+     * Window is combined from pre-aggregated time buckets - its start is rounded down to second, or to minute
+     * for windows longer than two minutes.
+     *
+     * @param windowLength Length of the window in millis. Must be positive and not longer than
+     *                     {@link #MAX_AGGREGATE_WINDOW}
+     * @return Aggregated trades
+     */
+    public TradesAggregate getTradesAggregate(long windowLength) {
+        return this.getTradesAggregate(windowLength, this.timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Aggregate all trades in window of given length that ends at given time
+     *
+     * @param windowLength Length of the window in millis
+     * @param currentTime End of the window
+     * @return Aggregated trades
+     */
+    TradesAggregate getTradesAggregate(long windowLength, long currentTime) {
+        if (windowLength <= 0 || windowLength > MAX_AGGREGATE_WINDOW) {
+            throw new RuntimeException("Invalid window length");
+        }
+
+        TradesAggregate aggregate = new TradesAggregate();
+        TimeBuckets timeBuckets = this.timeBuckets;
+        if (timeBuckets == null) {
+            aggregate.setFromDateTime(currentTime - windowLength);
+            aggregate.setToDateTime(currentTime);
+        } else {
+            timeBuckets.aggregate(currentTime - windowLength, currentTime, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Change candle interval and number of kept candles. Already built candles are dropped.
+     *
+     * @param candleInterval Length of candle interval in millis. Must be positive value
+     * @param candlesCount Number of kept candles. Must be positive value
+     */
+    public void setCandleInterval(long candleInterval, int candlesCount) {
+        if (candleInterval <= 0) {
+            throw new RuntimeException("Invalid candle interval");
+        }
+
+        if (candlesCount <= 0) {
+            throw new RuntimeException("Invalid candles count");
+        }
+
+        this.lockWriter();
         try {
-            lock.lock();
-            return this.tradesSet.tailSet(trade).iterator();
+            this.candleInterval = candleInterval;
+            this.candlesCount = candlesCount;
+            this.candles = null;
         } finally {
-            lock.unlock();
+            this.unlockWriter();
         }
     }
 
+    /**
+     * Read recent OHLCV candles. Candles are built when trades are added, so no trades are read.
+     * Intervals without trades have no candle.
+     *
+     * @return Candles ordered by time, the oldest first. The last candle is not closed if its interval
+     * is not finished
+     */
+    public List<Candle> getCandles() {
+        CandleRing candles = this.candles;
+        if (candles == null) {
+            return new ArrayList<Candle>();
+        }
+
+        return candles.getCandles(this.timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Find the time when the oldest trade in calculation interval leaves it, so stock price changes
+     * even without new trades.
+     *
+     * @param currentTime End of calculation interval
+     * @return Time of the next change or {@link Long#MAX_VALUE} if there are no trades in calculation interval
+     */
+    long getCalcIntervalExpiryTime(long currentTime) {
+        long dateTime = this.tradesBuffer.getFirstDateTime(currentTime - CALC_TIME);
+        return dateTime == Long.MAX_VALUE ? Long.MAX_VALUE : dateTime + CALC_TIME + 1;
+    }
+
     /**
      * @return Last trade that is recorded
+     * @throws java.util.NoSuchElementException if there are no trades
      */
     public Trade getLastTrade() {
-        Lock lock = this.readWriteLock.readLock();
+        Trade trade = this.findLastTrade();
+        if (trade == null) {
+            throw new NoSuchElementException();
+        }
+        return trade;
+    }
+
+    /**
+     * Copy last recorded trade into given holder, so the holder can be reused between calls
+     *
+     * @param trade Holder that is filled with the last trade
+     * @return <code>false</code> if there are no trades and the holder is not changed
+     */
+    public boolean readLastTrade(Trade trade) {
+        long stamp = this.lastTradeLock.tryOptimisticRead();
+        boolean found = this.copyLastTrade(trade);
+        if (!this.lastTradeLock.validate(stamp)) {
+            stamp = this.lastTradeLock.readLock();
+            try {
+                found = this.copyLastTrade(trade);
+            } finally {
+                this.lastTradeLock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Last trade that is recorded or <code>null</code> if there are no trades
+     */
+    Trade findLastTrade() {
+        Trade trade = new Trade();
+        return this.readLastTrade(trade) ? trade : null;
+    }
+
+    /**
+     * Evict all trades that are older than retention time.
+     *
+     * @return Number of evicted trades
+     */
+    public int evictTrades() {
+        this.lockWriter();
         try {
-            lock.lock();
-            return this.tradesSet.last();
+            return this.evictExpiredTrades(this.timeSource.currentTimeMillis());
         } finally {
-            lock.unlock();
+            this.unlockWriter();
+        }
+    }
+
+    /**
+     * @return Number of trades that are currently kept
+     */
+    public int getTradesCount() {
+        return this.tradesBuffer.size();
+    }
+
+    /**
+     * @return Sequence number of the last added trade, zero if there are no trades. It is also number of all
+     * added trades
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Version of trades. Value calculated after reading the version includes all changes up to that version,
+     * so it is still valid while the version is the same. Version is odd while writer changes trades.
+     *
+     * @return Twice the number of changes of trades, plus one while trades change
+     */
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @return Number of all trades that are evicted because of retention time or max trades limit
+     */
+    public long getEvictedTradesCount() {
+        return this.evictedTradesCount;
+    }
+
+    /**
+     * @return Number of writer lock acquisitions that had to wait for other writer
+     */
+    long getContendedWritesCount() {
+        return this.contendedWrites.sum();
+    }
+
+    /**
+     * @return Time spent by writers waiting for writer lock in nanos
+     */
+    long getWriterLockWaitNanos() {
+        return this.writerLockWaitNanos.sum();
+    }
+
+    /**
+     * Append trade to trades buffer.
+     * Must be called while holding the writer lock.
+     *
+     * @param trade Trade to append
+     */
+    private void appendTrade(Trade trade) {
+        trade.setSequence(this.appendTrade(trade.getTradeType(), trade.getDateTime(), trade.getQuantity(),
+                                           trade.getTotalPrice(), trade.getDividend()));
+    }
+
+    /**
+     * Append trade given by its values to trades buffer, time buckets and candles.
+     * Must be called while holding the writer lock.
+     *
+     * @return Sequence number of the trade
+     */
+    private long appendTrade(TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
+        long sequence = this.sequence + 1;
+        this.sequence = sequence;
+        this.tradesBuffer.add(sequence, tradeType, dateTime, quantity, totalPrice, dividend);
+        TimeBuckets timeBuckets = this.timeBuckets;
+        if (timeBuckets == null) {
+            timeBuckets = new TimeBuckets();
+            this.timeBuckets = timeBuckets;
+        }
+        timeBuckets.add(dateTime, quantity, totalPrice);
+        CandleRing candles = this.candles;
+        if (candles == null) {
+            candles = new CandleRing(this.candleInterval, this.candlesCount);
+            this.candles = candles;
+        }
+        candles.add(dateTime, quantity, totalPrice);
+        if (this.lastTradeType == null || dateTime >= this.lastTradeDateTime) {
+            long stamp = this.lastTradeLock.writeLock();
+            this.lastTradeType = tradeType;
+            this.lastTradeDateTime = dateTime;
+            this.lastTradeQuantity = quantity;
+            this.lastTradeTotalPrice = totalPrice;
+            this.lastTradeDividend = dividend;
+            this.lastTradeSequence = sequence;
+            this.lastTradeLock.unlockWrite(stamp);
+        }
+        return sequence;
+    }
+
+    /**
+     * Copy last trade fields without validation of concurrent update
+     */
+    private boolean copyLastTrade(Trade trade) {
+        TradeType tradeType = this.lastTradeType;
+        if (tradeType == null) {
+            return false;
+        }
+
+        trade.set(tradeType, this.lastTradeDateTime, this.lastTradeQuantity, this.lastTradeTotalPrice,
+                  this.lastTradeDividend);
+        trade.setSequence(this.lastTradeSequence);
+        return true;
+    }
+
+    /**
+     * Evict expired trades and trades over max trades limit.
+     * Must be called while holding the writer lock.
+     */
+    private void trimTrades() {
+        this.evictExpiredTrades(this.timeSource.currentTimeMillis());
+        while (this.tradesBuffer.size() > this.maxTrades) {
+            this.tradesBuffer.removeFirst();
+            this.evictedTradesCount++;
+        }
+    }
+
+    /**
+     * Remove all trades that are older than retention time.
+     * Must be called while holding the writer lock.
+     *
+     * @param currentTime Current time
+     * @return Number of evicted trades
+     */
+    private int evictExpiredTrades(long currentTime) {
+        long retentionStartTime = currentTime - this.retentionTime;
+
+        int evicted = 0;
+        while (!this.tradesBuffer.isEmpty() && this.tradesBuffer.getFirstDateTime() < retentionStartTime) {
+            this.tradesBuffer.removeFirst();
+            evicted++;
         }
+        this.evictedTradesCount += evicted;
+
+        return evicted;
+    }
+
+    /**
+     * Acquire writer lock. Writer usually holds the lock only for the append, but the same holder also rolls
+     * columns of the buffer, evicts old trades and updates candles and time buckets, so the hold time is not
+     * bounded by few memory writes. Waiting writer yields on every failed attempt instead of busy spinning, but it
+     * is never parked. Wait time is measured only when the lock is contended.
+     */
+    private void lockWriter() {
+        if (!this.writerLock.compareAndSet(false, true)) {
+            long startTime = System.nanoTime();
+            do {
+                Thread.yield();
+            } while (!this.writerLock.compareAndSet(false, true));
+            this.contendedWrites.increment();
+            this.writerLockWaitNanos.add(System.nanoTime() - startTime);
+        }
+
+        // single writer holds the lock, so the increment is not lost. Odd version marks trades as changing
+        this.version++;
+    }
+
+    /**
+     * Release writer lock
+     */
+    private void unlockWriter() {
+        this.version++;
+        this.writerLock.set(false);
     }
 }
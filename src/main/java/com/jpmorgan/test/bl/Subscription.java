@@ -0,0 +1,11 @@
+package com.jpmorgan.test.bl;
+
+/**
+ * Registration of analytics listener.
+ */
+public interface Subscription {
+    /**
+     * Remove the listener. Listener can still receive update that is already being published.
+     */
+    void cancel();
+}
@@ -0,0 +1,281 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.TradesAggregate;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Pre-aggregated trades of single stock in one second and one minute time buckets.<br/>
+ * Each bucket holds 128 bit sum of price * quantity (see {@link PriceArithmetic}), sum of quantity, number
+ * of trades and open, high, low and close price. Every trade updates its second and minute bucket, so window of
+ * any length up to {@link #MAX_WINDOW} is combined from whole minutes and at most two minutes of seconds at its
+ * edges, instead of reading raw trades.
+ * <br/>
+ * Buckets are kept in rings indexed by bucket time. Slot is reused by newer bucket, trade that is older than
+ * the ring is not aggregated.<br/>
+ * Buckets support single writer and multiple readers. Readers use optimistic read of {@link StampedLock}, so they
+ * don't block the writer.
+ */
+final class TimeBuckets {
+    /** Length of second bucket */
+    static final long SECOND = 1000;
+    /** Length of minute bucket */
+    static final long MINUTE = 60 * SECOND;
+    /** Max length of window that can be aggregated */
+    static final long MAX_WINDOW = 60 * MINUTE;
+    /** Number of second buckets */
+    private static final int SECOND_BUCKETS = 120;
+    /** Number of minute buckets. Window start is rounded down to minute, so it needs one more bucket */
+    private static final int MINUTE_BUCKETS = (int)(MAX_WINDOW / MINUTE) + 2;
+
+    /** One second buckets */
+    private final Level seconds;
+    /** One minute buckets */
+    private final Level minutes;
+    /** Guards buckets update */
+    private final StampedLock lock;
+
+    /**
+     * Default constructor
+     */
+    TimeBuckets() {
+        super();
+
+        this.seconds = new Level(SECOND, SECOND_BUCKETS);
+        this.minutes = new Level(MINUTE, MINUTE_BUCKETS);
+        this.lock = new StampedLock();
+    }
+
+    /**
+     * Aggregate trade into its buckets. Must be called by single thread at a time.
+     *
+     * @param dateTime When trade occurred
+     * @param quantity Quantity of the trade
+     * @param price Price of the trade
+     */
+    void add(long dateTime, int quantity, int price) {
+        long stamp = this.lock.writeLock();
+        try {
+            this.seconds.add(dateTime, quantity, price);
+            this.minutes.add(dateTime, quantity, price);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Combine buckets of given window. Start of the window is rounded down to second, or to minute if the second
+     * is not kept anymore.<br/>
+     * Can be called by any thread.
+     *
+     * @param fromDateTime Start of the window
+     * @param toDateTime End of the window
+     * @param aggregate Aggregate that is filled
+     */
+    void aggregate(long fromDateTime, long toDateTime, TradesAggregate aggregate) {
+        Accumulator accumulator = new Accumulator();
+        long stamp = this.lock.tryOptimisticRead();
+        this.accumulate(fromDateTime, toDateTime, accumulator);
+        if (!this.lock.validate(stamp)) {
+            stamp = this.lock.readLock();
+            try {
+                this.accumulate(fromDateTime, toDateTime, accumulator);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        aggregate.setFromDateTime(accumulator.fromDateTime);
+        aggregate.setToDateTime(toDateTime);
+        aggregate.setPriceQuantitySum(accumulator.priceQuantitySum);
+        aggregate.setPriceQuantitySumHigh(accumulator.priceQuantitySumHigh);
+        aggregate.setStockPrice(PriceArithmetic.averagePrice(accumulator.priceQuantitySumHigh,
+                                                             accumulator.priceQuantitySum, accumulator.quantitySum));
+        aggregate.setVolume(accumulator.quantitySum);
+        aggregate.setTradesCount(accumulator.count);
+        aggregate.setOpenPrice(accumulator.count == 0 ? 0 : accumulator.open);
+        aggregate.setHighPrice(accumulator.count == 0 ? 0 : accumulator.high);
+        aggregate.setLowPrice(accumulator.count == 0 ? 0 : accumulator.low);
+        aggregate.setClosePrice(accumulator.count == 0 ? 0 : accumulator.close);
+    }
+
+    /**
+     * Combine buckets without validation of concurrent update
+     */
+    private void accumulate(long fromDateTime, long toDateTime, Accumulator accumulator) {
+        accumulator.reset();
+
+        long oldestSecond = (Math.floorDiv(toDateTime, SECOND) - SECOND_BUCKETS + 1) * SECOND;
+        long bucketStart = Math.floorDiv(fromDateTime, SECOND) * SECOND;
+        if (bucketStart < oldestSecond) {
+            bucketStart = Math.floorDiv(fromDateTime, MINUTE) * MINUTE;
+        }
+        accumulator.fromDateTime = bucketStart;
+
+        while (bucketStart <= toDateTime) {
+            if (bucketStart % MINUTE == 0 && (bucketStart + MINUTE - 1 <= toDateTime || bucketStart < oldestSecond)) {
+                this.minutes.accumulate(bucketStart, accumulator);
+                bucketStart += MINUTE;
+            } else {
+                this.seconds.accumulate(bucketStart, accumulator);
+                bucketStart += SECOND;
+            }
+        }
+    }
+
+    /**
+     * Ring of buckets of the same length. Not thread safe - access must be guarded by the owner.
+     */
+    static final class Level {
+        /** Length of single bucket in millis */
+        private final long bucketLength;
+        /** Start time of bucket in the slot, {@link Long#MIN_VALUE} for empty slot */
+        private final long[] bucketStarts;
+        /** Sum of price * quantity, low word */
+        private final long[] priceQuantitySums;
+        /** Sum of price * quantity, high word */
+        private final long[] priceQuantitySumsHigh;
+        /** Sum of quantity */
+        private final long[] quantitySums;
+        /** Number of trades */
+        private final int[] counts;
+        /** Price of the first trade */
+        private final int[] opens;
+        /** Highest price */
+        private final int[] highs;
+        /** Lowest price */
+        private final int[] lows;
+        /** Price of the last trade */
+        private final int[] closes;
+        /** Time of the first trade */
+        private final long[] openTimes;
+        /** Time of the last trade */
+        private final long[] closeTimes;
+
+        Level(long bucketLength, int bucketsCount) {
+            this.bucketLength = bucketLength;
+            this.bucketStarts = new long[bucketsCount];
+            this.priceQuantitySums = new long[bucketsCount];
+            this.priceQuantitySumsHigh = new long[bucketsCount];
+            this.quantitySums = new long[bucketsCount];
+            this.counts = new int[bucketsCount];
+            this.opens = new int[bucketsCount];
+            this.highs = new int[bucketsCount];
+            this.lows = new int[bucketsCount];
+            this.closes = new int[bucketsCount];
+            this.openTimes = new long[bucketsCount];
+            this.closeTimes = new long[bucketsCount];
+            Arrays.fill(this.bucketStarts, Long.MIN_VALUE);
+        }
+
+        /**
+         * Aggregate trade into its bucket
+         */
+        void add(long dateTime, int quantity, int price) {
+            long bucket = Math.floorDiv(dateTime, this.bucketLength);
+            long bucketStart = bucket * this.bucketLength;
+            int slot = (int)Math.floorMod(bucket, (long)this.bucketStarts.length);
+
+            if (this.bucketStarts[slot] != bucketStart) {
+                if (this.bucketStarts[slot] > bucketStart) {
+                    // slot is already reused by newer bucket
+                    return;
+                }
+
+                this.bucketStarts[slot] = bucketStart;
+                this.priceQuantitySums[slot] = (long)price * quantity;
+                this.priceQuantitySumsHigh[slot] = 0;
+                this.quantitySums[slot] = quantity;
+                this.counts[slot] = 1;
+                this.opens[slot] = price;
+                this.highs[slot] = price;
+                this.lows[slot] = price;
+                this.closes[slot] = price;
+                this.openTimes[slot] = dateTime;
+                this.closeTimes[slot] = dateTime;
+                return;
+            }
+
+            long priceQuantity = (long)price * quantity;
+            long low = this.priceQuantitySums[slot] + priceQuantity;
+            this.priceQuantitySums[slot] = low;
+            this.priceQuantitySumsHigh[slot] += PriceArithmetic.carry(low, priceQuantity);
+            this.quantitySums[slot] += quantity;
+            this.counts[slot]++;
+            this.highs[slot] = Math.max(this.highs[slot], price);
+            this.lows[slot] = Math.min(this.lows[slot], price);
+            // late trade of the same time is after all trades of that time
+            if (dateTime < this.openTimes[slot]) {
+                this.opens[slot] = price;
+                this.openTimes[slot] = dateTime;
+            }
+            if (dateTime >= this.closeTimes[slot]) {
+                this.closes[slot] = price;
+                this.closeTimes[slot] = dateTime;
+            }
+        }
+
+        /**
+         * Add values of bucket with given start to the accumulator. Nothing is added if the bucket is not kept
+         */
+        void accumulate(long bucketStart, Accumulator accumulator) {
+            long bucketIndex = Math.floorDiv(bucketStart, this.bucketLength);
+            int slot = (int)Math.floorMod(bucketIndex, (long)this.bucketStarts.length);
+            if (this.bucketStarts[slot] != bucketStart) {
+                return;
+            }
+
+            accumulator.add(this.priceQuantitySumsHigh[slot], this.priceQuantitySums[slot], this.quantitySums[slot],
+                            this.counts[slot], this.opens[slot], this.openTimes[slot], this.highs[slot],
+                            this.lows[slot], this.closes[slot], this.closeTimes[slot]);
+        }
+    }
+
+    /**
+     * Combined values of buckets
+     */
+    static final class Accumulator {
+        long fromDateTime;
+        long priceQuantitySumHigh;
+        long priceQuantitySum;
+        long quantitySum;
+        int count;
+        int open;
+        long openTime;
+        int high;
+        int low;
+        int close;
+        long closeTime;
+
+        void reset() {
+            this.priceQuantitySumHigh = 0;
+            this.priceQuantitySum = 0;
+            this.quantitySum = 0;
+            this.count = 0;
+            this.openTime = Long.MAX_VALUE;
+            this.closeTime = Long.MIN_VALUE;
+            this.high = Integer.MIN_VALUE;
+            this.low = Integer.MAX_VALUE;
+        }
+
+        void add(long priceQuantitySumHigh, long priceQuantitySum, long quantitySum, int count, int open,
+                 long openTime, int high, int low, int close, long closeTime) {
+            long sum = this.priceQuantitySum + priceQuantitySum;
+            this.priceQuantitySumHigh += priceQuantitySumHigh + PriceArithmetic.carry(sum, priceQuantitySum);
+            this.priceQuantitySum = sum;
+            this.quantitySum += quantitySum;
+            this.count += count;
+            this.high = Math.max(this.high, high);
+            this.low = Math.min(this.low, low);
+            if (openTime < this.openTime) {
+                this.open = open;
+                this.openTime = openTime;
+            }
+            if (closeTime >= this.closeTime) {
+                this.close = close;
+                this.closeTime = closeTime;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.jpmorgan.test.bl;
+
+/**
+ * Source of current time for trades managers. Trades without explicit time are stamped with it and
+ * calculation interval and retention time are anchored on it.<br/>
+ * Wall clock is used by default, {@link SimulatedTimeSource simulated time} is used for replay of
+ * recorded trades.
+ */
+public interface TimeSource {
+    /** Wall clock time source */
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * @return Current time in millis
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,209 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Stock;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Binary encoding of trades and stocks, shared by {@link TradesJournal} and {@link TradesServer}.<br/>
+ * Every record has fixed width of {@link #RECORD_SIZE} bytes, so records are read and written in place by
+ * absolute gets and puts, without any intermediate objects. Byte order is the order of the buffer.
+ * <pre>
+ * trade: 0 type (1) | 1 trade type | 4 stock id | 8 date time | 16 quantity | 20 total price | 24 dividend
+ * stock: 0 type (2) | 1 stock type | 2 symbol length | 4 stock id | 8 par value | 12 fixed dividend | 16 symbol
+ * </pre>
+ * Record type is written after all other values, so record that is written in place is not visible until it is
+ * complete. Stocks are referenced by id that is given by the sender in stock record, symbol is encoded in UTF-8
+ * and must fit to {@link #MAX_SYMBOL_LENGTH} bytes.
+ */
+public final class TradesCodec {
+    /** Size of single record in bytes */
+    public static final int RECORD_SIZE = 32;
+    /** Max length of stock symbol in bytes */
+    public static final int MAX_SYMBOL_LENGTH = 16;
+    /** Trade record type */
+    static final byte TRADE_RECORD = 1;
+    /** Stock record type */
+    static final byte STOCK_RECORD = 2;
+
+    /** Charset of stock symbols */
+    private static final Charset SYMBOL_CHARSET = Charset.forName("UTF-8");
+    /** Trade types by ordinal */
+    private static final TradeType[] TRADE_TYPES = TradeType.values();
+    /** Stock types by ordinal */
+    private static final StockType[] STOCK_TYPES = StockType.values();
+
+    /**
+     * Utility class
+     */
+    private TradesCodec() {
+        super();
+    }
+
+    /**
+     * Encode trade at current position of the buffer and advance the position
+     *
+     * @param buffer Target buffer
+     * @param stockId Id of the stock
+     * @param tradeType Type of the trade. Cannot be <code>null</code>
+     * @param dateTime When trade occurred. 0 if the trade should be stamped by the receiver
+     * @param quantity Quantity of the trade
+     * @param totalPrice Total price of the trade
+     * @param dividend Dividend of the trade
+     * @throws BufferOverflowException If the record doesn't fit to the buffer
+     */
+    public static void encodeTrade(ByteBuffer buffer, int stockId, TradeType tradeType, long dateTime,
+                                   int quantity, int totalPrice, int dividend) {
+        int position = claim(buffer);
+        writeTrade(buffer, position, stockId, tradeType, dateTime, quantity, totalPrice, dividend);
+        buffer.position(position + RECORD_SIZE);
+    }
+
+    /**
+     * Encode trade at current position of the buffer and advance the position
+     *
+     * @param buffer Target buffer
+     * @param stockId Id of the stock
+     * @param trade Encoded trade
+     * @throws BufferOverflowException If the record doesn't fit to the buffer
+     */
+    public static void encodeTrade(ByteBuffer buffer, int stockId, Trade trade) {
+        encodeTrade(buffer, stockId, trade.getTradeType(), trade.getDateTime(), trade.getQuantity(),
+                    trade.getTotalPrice(), trade.getDividend());
+    }
+
+    /**
+     * Encode stock at current position of the buffer and advance the position
+     *
+     * @param buffer Target buffer
+     * @param stockId Id of the stock that is used by following trades
+     * @param stock Encoded stock
+     * @throws RuntimeException If stock symbol is too long
+     * @throws BufferOverflowException If the record doesn't fit to the buffer
+     */
+    public static void encodeStock(ByteBuffer buffer, int stockId, Stock stock) {
+        checkSymbol(stock.getSymbol());
+        int position = claim(buffer);
+        writeStock(buffer, position, stockId, stock);
+        buffer.position(position + RECORD_SIZE);
+    }
+
+    /**
+     * Decode all complete records between position and limit of the buffer. Position is advanced behind the last
+     * decoded record, so incomplete record stays in the buffer.
+     *
+     * @param buffer Source buffer
+     * @param listener Receiver of decoded records
+     * @return Number of decoded records
+     * @throws RuntimeException If the buffer contains unknown record type
+     */
+    public static int decode(ByteBuffer buffer, TradesCodecListener listener) {
+        int position = buffer.position();
+        int records = 0;
+        while (buffer.limit() - position >= RECORD_SIZE) {
+            switch (buffer.get(position)) {
+                case TRADE_RECORD:
+                    listener.onTrade(buffer.getInt(position + 4), tradeType(buffer.get(position + 1)),
+                                     buffer.getLong(position + 8), buffer.getInt(position + 16),
+                                     buffer.getInt(position + 20), buffer.getInt(position + 24));
+                    break;
+                case STOCK_RECORD:
+                    listener.onStock(buffer.getInt(position + 4), readSymbol(buffer, position),
+                                     stockType(buffer.get(position + 1)), buffer.getInt(position + 8),
+                                     buffer.getInt(position + 12));
+                    break;
+                default:
+                    throw new RuntimeException("Invalid record type " + buffer.get(position));
+            }
+
+            position += RECORD_SIZE;
+            records++;
+            // position is kept behind decoded records, so decoding can continue after listener fails
+            buffer.position(position);
+        }
+
+        return records;
+    }
+
+    /**
+     * Write trade record to given position
+     */
+    static void writeTrade(ByteBuffer buffer, int position, int stockId, TradeType tradeType, long dateTime,
+                           int quantity, int totalPrice, int dividend) {
+        buffer.put(position + 1, (byte)tradeType.ordinal());
+        buffer.putInt(position + 4, stockId);
+        buffer.putLong(position + 8, dateTime);
+        buffer.putInt(position + 16, quantity);
+        buffer.putInt(position + 20, totalPrice);
+        buffer.putInt(position + 24, dividend);
+        buffer.put(position, TRADE_RECORD);
+    }
+
+    /**
+     * Write stock record to given position. Symbol must be {@link #checkSymbol(String) checked} before
+     */
+    static void writeStock(ByteBuffer buffer, int position, int stockId, Stock stock) {
+        byte[] symbolBytes = stock.getSymbol().getBytes(SYMBOL_CHARSET);
+        buffer.put(position + 1, (byte)stock.getType().ordinal());
+        buffer.put(position + 2, (byte)symbolBytes.length);
+        buffer.putInt(position + 4, stockId);
+        buffer.putInt(position + 8, stock.getParValue());
+        buffer.putInt(position + 12, stock.getFixedDividend());
+        for (int i = 0; i < symbolBytes.length; i++) {
+            buffer.put(position + 16 + i, symbolBytes[i]);
+        }
+        buffer.put(position, STOCK_RECORD);
+    }
+
+    /**
+     * Read symbol of stock record at given position
+     */
+    static String readSymbol(ByteBuffer buffer, int position) {
+        int symbolLength = Math.min(buffer.get(position + 2) & 0xFF, MAX_SYMBOL_LENGTH);
+        byte[] symbolBytes = new byte[symbolLength];
+        for (int i = 0; i < symbolLength; i++) {
+            symbolBytes[i] = buffer.get(position + 16 + i);
+        }
+        return new String(symbolBytes, SYMBOL_CHARSET);
+    }
+
+    /**
+     * @return Trade type of given ordinal, <code>null</code> if it is unknown
+     */
+    static TradeType tradeType(byte ordinal) {
+        return ordinal >= 0 && ordinal < TRADE_TYPES.length ? TRADE_TYPES[ordinal] : null;
+    }
+
+    /**
+     * @return Stock type of given ordinal, <code>null</code> if it is unknown
+     */
+    static StockType stockType(byte ordinal) {
+        return ordinal >= 0 && ordinal < STOCK_TYPES.length ? STOCK_TYPES[ordinal] : null;
+    }
+
+    /**
+     * @param stockSymbol Stock symbol
+     * @throws RuntimeException If symbol doesn't fit to stock record
+     */
+    static void checkSymbol(String stockSymbol) {
+        if (stockSymbol.getBytes(SYMBOL_CHARSET).length > MAX_SYMBOL_LENGTH) {
+            throw new RuntimeException("Stock symbol is too long: " + stockSymbol);
+        }
+    }
+
+    /**
+     * @return Position of the record
+     * @throws BufferOverflowException If the record doesn't fit to the buffer
+     */
+    private static int claim(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_SIZE) {
+            throw new BufferOverflowException();
+        }
+        return buffer.position();
+    }
+}
@@ -0,0 +1,35 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+
+/**
+ * Receiver of records decoded by {@link TradesCodec}. Values are passed directly from the buffer, so decoding of
+ * trades doesn't allocate.
+ *
+ * @see TradesCodec#decode(java.nio.ByteBuffer, TradesCodecListener)
+ */
+public interface TradesCodecListener {
+    /**
+     * Called for every trade record
+     *
+     * @param stockId Id of the stock given by the sender
+     * @param tradeType Type of the trade. <code>null</code> if the record contains unknown type
+     * @param dateTime When trade occurred. 0 if the trade should be stamped by the receiver
+     * @param quantity Quantity of the trade
+     * @param totalPrice Total price of the trade
+     * @param dividend Dividend of the trade
+     */
+    void onTrade(int stockId, TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend);
+
+    /**
+     * Called for every stock record
+     *
+     * @param stockId Id of the stock given by the sender
+     * @param stockSymbol Symbol of the stock
+     * @param stockType Type of the stock. <code>null</code> if the record contains unknown type
+     * @param parValue Par value of the stock
+     * @param fixedDividend Fixed dividend of the stock
+     */
+    void onStock(int stockId, String stockSymbol, StockType stockType, int parValue, int fixedDividend);
+}
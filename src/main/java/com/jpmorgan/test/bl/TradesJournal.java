@@ -0,0 +1,477 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Stock;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append only write-ahead journal of accepted trades and stock changes.<br/>
+ * Journal is split to memory mapped segment files of fixed size. Records are encoded by {@link TradesCodec}
+ * and have fixed width of {@link #RECORD_SIZE} bytes, so writers claim their slot by single atomic increment
+ * and write it without any lock. Record type byte is written after all other values, so partially written
+ * record is skipped.<br/>
+ * Stocks get journal id when they are journaled for the first time and trades refer to the id. Every segment
+ * starts with records of all known stocks, so any segment can be replayed without older segments. When segment
+ * is full, time of its newest trade is written to its header - segments with all trades older than retention
+ * time are deleted on recovery and when segment is rolled, so recovery time and disk usage depend on number of
+ * kept trades and not on journal history. Only header of such segment is read, it is never mapped.
+ */
+final class TradesJournal {
+    /** Size of single record in bytes */
+    static final int RECORD_SIZE = TradesCodec.RECORD_SIZE;
+    /** Default size of segment file in bytes */
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** Magic number in segment header */
+    private static final int MAGIC = 0x534A524E;
+    /** Segment file name prefix */
+    private static final String SEGMENT_PREFIX = "journal-";
+    /** Segment file name suffix */
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /** Directory with segment files */
+    private File directory;
+    /** Size of segment file in bytes */
+    private int segmentSize;
+    /** Time in millis for which trades are kept */
+    private long retentionTime;
+    /** Journal id of each stock */
+    private ConcurrentHashMap<String, Integer> stockIds;
+    /** Last journaled reference data of each stock */
+    private Map<String, Stock> stocks;
+    /** Segment that is currently written */
+    private volatile Segment segment;
+    /** Index of next segment file */
+    private long nextSegmentIndex;
+
+    /**
+     * Construct journal in given directory. Journal must be {@link #recover(TradesManager, long) recovered}
+     * and {@link #start(Collection) started} before use.
+     *
+     * @param directory Directory with segment files. Created if it doesn't exist
+     * @param segmentSize Size of segment file in bytes. Must fit header and at least one record
+     * @param retentionTime Time in millis for which trades are kept. Older segments are deleted
+     */
+    TradesJournal(File directory, int segmentSize, long retentionTime) {
+        super();
+
+        if (directory == null) {
+            throw new RuntimeException("Journal directory cannot be null");
+        }
+
+        if (segmentSize < 2 * RECORD_SIZE) {
+            throw new RuntimeException("Invalid segment size");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % RECORD_SIZE;
+        this.retentionTime = retentionTime;
+        this.stockIds = new ConcurrentHashMap<String, Integer>();
+        this.stocks = new ConcurrentHashMap<String, Stock>();
+    }
+
+    /**
+     * Replay journaled stocks and trades to given trades manager. Trades older than given time are skipped
+     * and segments that contain only such trades are deleted.
+     *
+     * @param tradesManager Trades manager that receives stocks and trades
+     * @param retentionStartTime Time of the oldest trade that is replayed
+     * @throws IOException If segment cannot be read
+     */
+    void recover(TradesManager tradesManager, long retentionStartTime) throws IOException {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + this.directory);
+        }
+
+        File[] files = this.listSegments();
+        List<String> symbols = new ArrayList<String>();
+        for (int i = 0; i < files.length; i++) {
+            long maxDateTime = readMaxDateTime(files[i]);
+            boolean lastSegment = i == files.length - 1;
+            if (maxDateTime != 0 && maxDateTime < retentionStartTime && !lastSegment) {
+                // every later segment starts with all stocks, so expired segment is not needed
+                files[i].delete();
+                continue;
+            }
+
+            // mapping of replayed segment is released when the buffer is collected
+            MappedByteBuffer buffer = map(files[i], FileChannel.MapMode.READ_WRITE, files[i].length());
+            maxDateTime = this.replaySegment(buffer, tradesManager, retentionStartTime, symbols);
+            if (buffer.getLong(8) == 0) {
+                // segment is not closed properly
+                buffer.putLong(8, maxDateTime);
+                buffer.force();
+            }
+        }
+
+        if (files.length > 0) {
+            String name = files[files.length - 1].getName();
+            this.nextSegmentIndex = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                                  name.length() - SEGMENT_SUFFIX.length())) + 1;
+        }
+    }
+
+    /**
+     * Open new segment and write all given stocks to it
+     *
+     * @param stocks All stocks that are known to the trades manager
+     * @throws IOException If segment cannot be created
+     */
+    synchronized void start(Collection<Stock> stocks) throws IOException {
+        for (Stock stock: stocks) {
+            TradesCodec.checkSymbol(stock.getSymbol());
+            this.registerStock(stock);
+        }
+
+        this.segment = this.openSegment();
+    }
+
+    /**
+     * Journal trade of given stock. Stock must be journaled before. Trade is passed by its values, so journaling
+     * doesn't allocate.
+     *
+     * @param stockSymbol Symbol of the stock
+     * @param tradeType Type of the trade
+     * @param dateTime When trade occurred
+     * @param quantity Quantity of the trade
+     * @param totalPrice Total price of the trade
+     * @param dividend Dividend of the trade
+     */
+    void appendTrade(String stockSymbol, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                     int dividend) {
+        int stockId = this.stockIds.get(stockSymbol);
+        while (true) {
+            Segment segment = this.segment;
+            // max time is updated before the slot is claimed, so it is complete when segment is full
+            segment.updateMaxDateTime(dateTime);
+            int position = segment.claim();
+            if (position >= 0) {
+                TradesCodec.writeTrade(segment.buffer, position, stockId, tradeType, dateTime, quantity, totalPrice,
+                                       dividend);
+                return;
+            }
+
+            this.roll(segment);
+        }
+    }
+
+    /**
+     * Journal new or updated stock
+     *
+     * @param stock Stock reference data
+     * @throws RuntimeException If stock symbol is too long
+     */
+    synchronized void appendStock(Stock stock) {
+        TradesCodec.checkSymbol(stock.getSymbol());
+        int stockId = this.registerStock(stock);
+        while (true) {
+            Segment segment = this.segment;
+            int position = segment.claim();
+            if (position >= 0) {
+                TradesCodec.writeStock(segment.buffer, position, stockId, stock);
+                return;
+            }
+
+            this.roll(segment);
+        }
+    }
+
+    /**
+     * Close current segment. Mapped files are flushed to disk. Segment stays mapped, so writers that
+     * are still appending don't fail.
+     */
+    synchronized void close() {
+        Segment segment = this.segment;
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Replay all records of single segment. Runs of written records are decoded by {@link TradesCodec}, empty slots
+     * between them are skipped.
+     *
+     * @param buffer Mapped segment
+     * @param tradesManager Trades manager that receives stocks and trades
+     * @param retentionStartTime Time of the oldest trade that is replayed
+     * @param symbols Stock symbols by journal id
+     * @return Time of the newest trade in segment
+     * @throws RuntimeException If the segment contains unknown record, trade or stock type
+     */
+    private long replaySegment(MappedByteBuffer buffer, TradesManager tradesManager, long retentionStartTime,
+                               List<String> symbols) {
+        Replayer replayer = new Replayer(tradesManager, retentionStartTime, symbols);
+        // duplicate is decoded, so position and limit of the mapped segment are not changed
+        ByteBuffer records = buffer.duplicate();
+        int limit = buffer.capacity() - buffer.capacity() % RECORD_SIZE;
+        int position = RECORD_SIZE;
+        while (position < limit) {
+            int end = position;
+            while (end < limit && buffer.get(end) != 0) {
+                end += RECORD_SIZE;
+            }
+
+            if (end > position) {
+                records.limit(end);
+                records.position(position);
+                TradesCodec.decode(records, replayer);
+            }
+            // skip empty slot behind the run
+            position = end + RECORD_SIZE;
+        }
+
+        return replayer.maxDateTime;
+    }
+
+    /**
+     * Close full segment and open new one. Nothing is done if the segment is already replaced.
+     *
+     * @param fullSegment Segment without free slots
+     */
+    private synchronized void roll(Segment fullSegment) {
+        if (this.segment != fullSegment) {
+            return;
+        }
+
+        fullSegment.close();
+        try {
+            this.segment = this.openSegment();
+            this.deleteExpiredSegments(fullSegment.maxDateTime.get() - this.retentionTime);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot roll journal segment", e);
+        }
+    }
+
+    /**
+     * Delete closed segments with all trades older than given time. The newest segment is never deleted.
+     * Segment that cannot be deleted yet, because it is still mapped, is deleted on next roll.
+     *
+     * @param retentionStartTime Time of the oldest trade that is kept
+     * @throws IOException If segment header cannot be read
+     */
+    private void deleteExpiredSegments(long retentionStartTime) throws IOException {
+        File[] files = this.listSegments();
+        for (int i = 0; i < files.length - 1; i++) {
+            long maxDateTime = readMaxDateTime(files[i]);
+            if (maxDateTime != 0 && maxDateTime < retentionStartTime) {
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * @return Segment files ordered from the oldest one
+     */
+    private File[] listSegments() throws IOException {
+        File[] files = this.directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Cannot list journal directory " + this.directory);
+        }
+
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Create new segment file and write all known stocks to it
+     *
+     * @return New segment
+     * @throws IOException If segment file cannot be created
+     */
+    private Segment openSegment() throws IOException {
+        File file = new File(this.directory, String.format("%s%019d%s", SEGMENT_PREFIX, this.nextSegmentIndex,
+                                                           SEGMENT_SUFFIX));
+        MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_WRITE, this.segmentSize);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, RECORD_SIZE);
+        this.nextSegmentIndex++;
+
+        Segment segment = new Segment(buffer);
+        for (Stock stock: this.stocks.values()) {
+            int position = segment.claim();
+            if (position < 0) {
+                throw new RuntimeException("Segment size is too small for all stocks");
+            }
+            TradesCodec.writeStock(buffer, position, this.stockIds.get(stock.getSymbol()), stock);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Assign journal id to the stock if it doesn't have one and remember its reference data
+     *
+     * @param stock Stock reference data
+     * @return Journal id of the stock
+     */
+    private int registerStock(Stock stock) {
+        Integer stockId = this.stockIds.get(stock.getSymbol());
+        if (stockId == null) {
+            stockId = this.stockIds.size();
+            this.stockIds.put(stock.getSymbol(), stockId);
+        }
+        this.stocks.put(stock.getSymbol(), stock);
+
+        return stockId;
+    }
+
+    /**
+     * Read segment header by positional read, so segment that is not replayed is never mapped
+     *
+     * @param file Segment file
+     * @return Time of the newest trade in the segment, zero if the segment is not closed
+     * @throws IOException If header cannot be read or it is not valid
+     */
+    private static long readMaxDateTime(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // read until the header is complete or end of file
+            }
+            if (channel.size() < RECORD_SIZE || header.hasRemaining() || header.getInt(0) != MAGIC ||
+                header.getInt(4) != RECORD_SIZE) {
+                throw new IOException("Invalid journal segment " + file);
+            }
+        } finally {
+            channel.close();
+        }
+
+        return header.getLong(8);
+    }
+
+    /**
+     * Map file. File is created if it doesn't exist
+     */
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE);
+        try {
+            // mapping stays valid after channel is closed
+            return channel.map(mode, 0, size);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Listener that passes decoded records of segment to the trades manager
+     */
+    private final class Replayer implements TradesCodecListener {
+        /** Trades manager that receives stocks and trades */
+        private final TradesManager tradesManager;
+        /** Time of the oldest trade that is replayed */
+        private final long retentionStartTime;
+        /** Stock symbols by journal id */
+        private final List<String> symbols;
+        /** Time of the newest trade, including trades that are not replayed */
+        private long maxDateTime;
+
+        Replayer(TradesManager tradesManager, long retentionStartTime, List<String> symbols) {
+            this.tradesManager = tradesManager;
+            this.retentionStartTime = retentionStartTime;
+            this.symbols = symbols;
+        }
+
+        @Override
+        public void onTrade(int stockId, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                            int dividend) {
+            if (tradeType == null) {
+                throw new RuntimeException("Corrupt journal: unknown trade type");
+            }
+
+            this.maxDateTime = Math.max(this.maxDateTime, dateTime);
+            if (dateTime < this.retentionStartTime) {
+                return;
+            }
+
+            String symbol = stockId >= 0 && stockId < this.symbols.size() ? this.symbols.get(stockId) : null;
+            try {
+                this.tradesManager.addTrade(symbol, tradeType, dateTime, quantity, totalPrice, dividend);
+            } catch (StockNotInitializedException e) {
+                throw new RuntimeException("Journaled trade of unknown stock", e);
+            }
+        }
+
+        @Override
+        public void onStock(int stockId, String stockSymbol, StockType stockType, int parValue,
+                            int fixedDividend) {
+            if (stockType == null || stockId < 0) {
+                throw new RuntimeException("Corrupt journal: invalid stock record");
+            }
+
+            while (this.symbols.size() <= stockId) {
+                this.symbols.add(null);
+            }
+            this.symbols.set(stockId, stockSymbol);
+
+            this.tradesManager.addOrUpdateStock(stockSymbol, stockType, parValue, fixedDividend);
+            TradesJournal.this.stockIds.put(stockSymbol, stockId);
+        }
+    }
+
+    /**
+     * Single mapped segment file
+     */
+    private static final class Segment {
+        /** Mapped file */
+        private final MappedByteBuffer buffer;
+        /** Position of the next free slot */
+        private final AtomicInteger nextPosition;
+        /** Time of the newest trade */
+        private final AtomicLong maxDateTime;
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.nextPosition = new AtomicInteger(RECORD_SIZE);
+            this.maxDateTime = new AtomicLong();
+        }
+
+        /**
+         * @return Position of claimed slot or -1 if segment is full
+         */
+        int claim() {
+            int position = this.nextPosition.getAndAdd(RECORD_SIZE);
+            // position can overflow only after billions of failed claims, segment is rolled long before
+            return position >= 0 && position <= this.buffer.capacity() - RECORD_SIZE ? position : -1;
+        }
+
+        void updateMaxDateTime(long dateTime) {
+            long maxDateTime;
+            while (dateTime > (maxDateTime = this.maxDateTime.get())) {
+                if (this.maxDateTime.compareAndSet(maxDateTime, dateTime)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Write time of the newest trade to header and flush the segment
+         */
+        void close() {
+            this.buffer.putLong(8, this.maxDateTime.get());
+            this.buffer.force();
+        }
+    }
+}
@@ -1,42 +1,133 @@
 package com.jpmorgan.test.bl;
 
+import com.jpmorgan.test.pojo.Candle;
+import com.jpmorgan.test.pojo.MarketAnalytics;
+import com.jpmorgan.test.pojo.MetricsSnapshot;
 import com.jpmorgan.test.pojo.Stock;
+import com.jpmorgan.test.pojo.StockAnalytics;
 import com.jpmorgan.test.pojo.StockType;
 import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeRequest;
+import com.jpmorgan.test.pojo.TradeStatus;
 import com.jpmorgan.test.pojo.TradeType;
+import com.jpmorgan.test.pojo.TradesAggregate;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Main trades manager. Holds information about all trades of all stocks.<br/>
- * Calculates all needed data.
+ * Calculates all needed data.<br/>
+ * Stocks and their trades are kept in single concurrent registry, so lookup by symbol is lock free.
+ * Every stock also gets dense int id when it is added - all methods that take stock symbol have overload
+ * that takes the id, which is looked up by single array load.
  *
  * @version 1.0 / 15.08.2015
  * @author Radoslav Lozanov
  */
 public class TradesManager {
-    /** Trades manager by stock */
-    private HashMap<Stock, StockTradesManager> tradesMap;
-    /** All stocks by symbol */
-    private HashMap<String, Stock> stocksMap;
-    /** Read write lock for reading from stocksMap */
-    private ReadWriteLock readWriteLock;
+    /** All stocks with their trades managers by symbol */
+    private ConcurrentHashMap<String, StockEntry> stocksMap;
+    /** The same stocks by id */
+    private StockIdTable stocksById;
+    /** Trades older than this time frame are evicted */
+    private long retentionTime;
+    /** Maximum number of trades that are kept for single stock */
+    private int maxTradesPerStock;
+    /** Incrementally maintained GBCE All Share Index */
+    private AllSharesIndex allSharesIndex;
+    /** Source of current time */
+    private TimeSource timeSource;
+    /** Background executor that evicts expired trades. <code>null</code> if not started */
+    private ScheduledExecutorService evictionSweeper;
+    /** Length of candle interval of all stocks */
+    private volatile long candleInterval;
+    /** Number of kept candles of each stock */
+    private volatile int candlesCount;
+    /** Write-ahead journal of trades and stocks. <code>null</code> if not opened */
+    private volatile TradesJournal journal;
+    /** Held for reading by stock changes and for writing by opening of the journal */
+    private ReentrantReadWriteLock journalLock;
+    /** Pushes analytics updates to listeners */
+    private AnalyticsPublisher analyticsPublisher;
+    /** Background executor that publishes analytics updates. <code>null</code> if not started */
+    private ScheduledExecutorService analyticsPublisherExecutor;
+    /** Counters, latencies and gauges */
+    private TradesMetrics metrics;
+    /** Name of registered metrics MBean. <code>null</code> if not registered */
+    private ObjectName metricsObjectName;
+    /** Cache of stock analytics. <code>null</code> if disabled */
+    private volatile AnalyticsCache analyticsCache;
 
     /**
      * Default constructor
      */
     public TradesManager() {
+        this(StockTradesManager.CALC_TIME, StockTradesManager.DEFAULT_MAX_TRADES);
+    }
+
+    /**
+     * Construct trades manager with given retention policy for trades of each stock
+     *
+     * @param retentionTime Trades older than this time (in millis) are evicted. Cannot be shorter than 15 minutes
+     * @param maxTradesPerStock Maximum number of trades that are kept for single stock. Must be positive value
+     */
+    public TradesManager(long retentionTime, int maxTradesPerStock) {
+        this(retentionTime, maxTradesPerStock, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Construct trades manager with given retention policy and time source. Trades without explicit time are
+     * stamped by the time source and all calculations are done for its current time.
+     *
+     * @param retentionTime Trades older than this time (in millis) are evicted. Cannot be shorter than 15 minutes
+     * @param maxTradesPerStock Maximum number of trades that are kept for single stock. Must be positive value
+     * @param timeSource Source of current time. Cannot be <code>null</code>
+     */
+    public TradesManager(long retentionTime, int maxTradesPerStock, TimeSource timeSource) {
         super();
 
-        this.tradesMap = new HashMap<Stock, StockTradesManager>();
-        this.stocksMap = new HashMap<String, Stock>();
-        this.readWriteLock = new ReentrantReadWriteLock();
+        if (retentionTime < StockTradesManager.CALC_TIME) {
+            throw new RuntimeException("Retention time cannot be shorter than calculation interval");
+        }
+
+        if (maxTradesPerStock <= 0) {
+            throw new RuntimeException("Invalid max trades value");
+        }
+
+        if (timeSource == null) {
+            throw new RuntimeException("Time source cannot be null");
+        }
+
+        this.timeSource = timeSource;
+        this.retentionTime = retentionTime;
+        this.maxTradesPerStock = maxTradesPerStock;
+        this.stocksMap = new ConcurrentHashMap<String, StockEntry>();
+        this.stocksById = new StockIdTable();
+        this.journalLock = new ReentrantReadWriteLock();
+        this.allSharesIndex = new AllSharesIndex();
+        this.candleInterval = StockTradesManager.DEFAULT_CANDLE_INTERVAL;
+        this.candlesCount = StockTradesManager.DEFAULT_CANDLES_COUNT;
+        this.analyticsPublisher = new AnalyticsPublisher(this.stocksMap, this.allSharesIndex, timeSource);
+        this.metrics = new TradesMetrics(this.stocksMap, timeSource);
     }
 
     /**
@@ -52,15 +143,263 @@ public class TradesManager {
      */
     public void addTrade(String stockSymbol, TradeType tradeType, int quantity, int totalPrice, int dividend)
             throws StockNotInitializedException {
-        Trade trade = new Trade(tradeType, System.currentTimeMillis(), quantity, totalPrice, dividend);
-        if (!trade.validate()) {
-            throw new RuntimeException("Invalid argument(s)");
+        this.addTrade(stockSymbol, tradeType, this.timeSource.currentTimeMillis(), quantity, totalPrice, dividend);
+    }
+
+    /**
+     * Add new trade that occurred at given time, e.g. recorded trade that is replayed.<br/>
+     * Trade older than retention time (relative to current time of the time source) is evicted right away.
+     *
+     * @param stockSymbol Stock symbol. Cannot be <code>null</code>
+     * @param tradeType Type of the trade. Cannot be <code>null</code>
+     * @param dateTime When trade occurred in millis. Cannot be zero
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @throws StockNotInitializedException if Stock is not found
+     * @throws RuntimeException if some of the arguments is not valid
+     */
+    public void addTrade(String stockSymbol, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                         int dividend) throws StockNotInitializedException {
+        switch (this.tryAddTrade(stockSymbol, tradeType, dateTime, quantity, totalPrice, dividend)) {
+            case InvalidArguments:
+                throw new RuntimeException("Invalid argument(s)");
+            case StockNotInitialized:
+                throw new StockNotInitializedException("Stock not initialized!", stockSymbol);
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Add new trade of stock given by its id
+     *
+     * @param stockId Id of the stock returned by {@link #addOrUpdateStock(String, StockType, int, int)}
+     * @param tradeType Type of the trade. Cannot be <code>null</code>
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @throws StockNotInitializedException if Stock is not found
+     * @throws RuntimeException if some of the arguments is not valid
+     */
+    public void addTrade(int stockId, TradeType tradeType, int quantity, int totalPrice, int dividend)
+            throws StockNotInitializedException {
+        switch (this.tryAddTrade(stockId, tradeType, quantity, totalPrice, dividend)) {
+            case InvalidArguments:
+                throw new RuntimeException("Invalid argument(s)");
+            case StockNotInitialized:
+                throw new StockNotInitializedException("Stock not initialized!", String.valueOf(stockId));
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Add new trade stamped with current time and return its result instead of throwing exception.<br/>
+     * Trade is passed by its values down to primitive columns and buckets, so once buffers of the stock are
+     * warmed up, the call doesn't allocate.
+     *
+     * @param stockSymbol Stock symbol
+     * @param tradeType Type of the trade
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @return Result of the trade
+     */
+    public TradeStatus tryAddTrade(String stockSymbol, TradeType tradeType, int quantity, int totalPrice,
+                                   int dividend) {
+        return this.tryAddTrade(stockSymbol, tradeType, this.timeSource.currentTimeMillis(), quantity, totalPrice,
+                                dividend);
+    }
+
+    /**
+     * Add new trade that occurred at given time and return its result instead of throwing exception.
+     * The call doesn't allocate once buffers of the stock are warmed up.
+     *
+     * @param stockSymbol Stock symbol
+     * @param tradeType Type of the trade
+     * @param dateTime When trade occurred in millis. Cannot be zero
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @return Result of the trade
+     */
+    public TradeStatus tryAddTrade(String stockSymbol, TradeType tradeType, long dateTime, int quantity,
+                                   int totalPrice, int dividend) {
+        return this.tryAddTrade(stockSymbol == null ? null : this.stocksMap.get(stockSymbol), tradeType, dateTime,
+                                quantity, totalPrice, dividend);
+    }
+
+    /**
+     * Add new trade of stock given by its id, stamped with current time. Result is returned instead of
+     * throwing exception and the call doesn't allocate once buffers of the stock are warmed up.
+     *
+     * @param stockId Id of the stock returned by {@link #addOrUpdateStock(String, StockType, int, int)}
+     * @param tradeType Type of the trade
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @return Result of the trade
+     */
+    public TradeStatus tryAddTrade(int stockId, TradeType tradeType, int quantity, int totalPrice, int dividend) {
+        return this.tryAddTrade(this.stocksById.get(stockId), tradeType, this.timeSource.currentTimeMillis(),
+                                quantity, totalPrice, dividend);
+    }
+
+    /**
+     * Add new trade of stock given by its id. Result is returned instead of throwing exception and the call
+     * doesn't allocate once buffers of the stock are warmed up.
+     *
+     * @param stockId Id of the stock returned by {@link #addOrUpdateStock(String, StockType, int, int)}
+     * @param tradeType Type of the trade
+     * @param dateTime When trade occurred
+     * @param quantity quantity. Must be positive value
+     * @param totalPrice total price. Must be positive value
+     * @param dividend dividend for the trade. Must be positive value
+     * @return Result of the trade
+     */
+    public TradeStatus tryAddTrade(int stockId, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                                   int dividend) {
+        return this.tryAddTrade(this.stocksById.get(stockId), tradeType, dateTime, quantity, totalPrice, dividend);
+    }
+
+    /**
+     * Add new trade and record its metrics
+     *
+     * @param entry Stock of the trade. <code>null</code> if stock is not found
+     * @return Result of the trade
+     */
+    private TradeStatus tryAddTrade(StockEntry entry, TradeType tradeType, long dateTime, int quantity,
+                                    int totalPrice, int dividend) {
+        long startTime = this.metrics.startAddTrade();
+        TradeStatus status = this.appendTrade(entry, tradeType, dateTime, quantity, totalPrice, dividend);
+        this.metrics.record(this.metrics.addTrade, startTime);
+        if (status == TradeStatus.Accepted) {
+            this.metrics.countTrades(1, 0);
+        } else {
+            this.metrics.countTrades(0, 1);
         }
+        return status;
+    }
+
+    /**
+     * Validate trade and add it to its stock and journal
+     *
+     * @return Result of the trade
+     */
+    private TradeStatus appendTrade(StockEntry entry, TradeType tradeType, long dateTime, int quantity,
+                                    int totalPrice, int dividend) {
+        if (!Trade.validate(tradeType, dateTime, quantity, totalPrice, dividend)) {
+            return TradeStatus.InvalidArguments;
+        }
+
+        if (entry == null) {
+            return TradeStatus.StockNotInitialized;
+        }
+
+        TradesJournal journal = this.journal;
+        if (journal != null) {
+            journal.appendTrade(entry.getStock().getSymbol(), tradeType, dateTime, quantity, totalPrice, dividend);
+        }
+        entry.getTradesManager().addTrade(tradeType, dateTime, quantity, totalPrice, dividend);
+        this.allSharesIndex.markDirty(entry.getIndexMember());
+        this.analyticsPublisher.markChanged(entry.getTopic());
+        return TradeStatus.Accepted;
+    }
+
+    /**
+     * Add batch of trades. All trades get the same time and trades of each stock are added under
+     * single writer lock acquisition.<br/>
+     * Invalid trades don't stop the batch - result of each trade is returned instead.
+     *
+     * @param tradeRequests Trades to add. Cannot be <code>null</code>
+     * @return Result of each trade in iteration order of the collection
+     */
+    public TradeStatus[] addTrades(Collection<TradeRequest> tradeRequests) {
+        int count = tradeRequests.size();
+        String[] stockSymbols = new String[count];
+        TradeType[] tradeTypes = new TradeType[count];
+        int[] quantities = new int[count];
+        int[] totalPrices = new int[count];
+        int[] dividends = new int[count];
 
-        Stock stock = this.getStock(stockSymbol);
-        StockTradesManager tradesManager = this.getStockTradesManager(stock);
+        int i = 0;
+        for (TradeRequest tradeRequest: tradeRequests) {
+            stockSymbols[i] = tradeRequest.getStockSymbol();
+            tradeTypes[i] = tradeRequest.getTradeType();
+            quantities[i] = tradeRequest.getQuantity();
+            totalPrices[i] = tradeRequest.getTotalPrice();
+            dividends[i] = tradeRequest.getDividend();
+            i++;
+        }
 
-        tradesManager.addTrade(trade);
+        return this.addTrades(stockSymbols, tradeTypes, quantities, totalPrices, dividends);
+    }
+
+    /**
+     * Add batch of trades given as parallel arrays. All trades get the same time and trades of each stock
+     * are added under single writer lock acquisition.<br/>
+     * Invalid trades don't stop the batch - result of each trade is returned instead.
+     *
+     * @param stockSymbols Stock symbols
+     * @param tradeTypes Types of the trades
+     * @param quantities Quantities
+     * @param totalPrices Total prices
+     * @param dividends Dividends
+     * @return Result of each trade
+     * @throws RuntimeException if arrays have different length
+     */
+    public TradeStatus[] addTrades(String[] stockSymbols, TradeType[] tradeTypes, int[] quantities,
+                                   int[] totalPrices, int[] dividends) {
+        int count = stockSymbols.length;
+        if (tradeTypes.length != count || quantities.length != count || totalPrices.length != count ||
+                dividends.length != count) {
+            throw new RuntimeException("Batch arrays must have the same length");
+        }
+
+        TradeStatus[] statuses = new TradeStatus[count];
+        long dateTime = this.timeSource.currentTimeMillis();
+
+        // Validate and group trades by stock
+        int accepted = 0;
+        TradesJournal journal = this.journal;
+        Map<StockEntry, List<Trade>> tradesByStock = new IdentityHashMap<StockEntry, List<Trade>>();
+        for (int i = 0; i < count; i++) {
+            Trade trade = new Trade(tradeTypes[i], dateTime, quantities[i], totalPrices[i], dividends[i]);
+            if (!trade.validate()) {
+                statuses[i] = TradeStatus.InvalidArguments;
+                continue;
+            }
+
+            StockEntry entry = stockSymbols[i] == null ? null : this.stocksMap.get(stockSymbols[i]);
+            if (entry == null) {
+                statuses[i] = TradeStatus.StockNotInitialized;
+                continue;
+            }
+
+            List<Trade> trades = tradesByStock.get(entry);
+            if (trades == null) {
+                trades = new ArrayList<Trade>();
+                tradesByStock.put(entry, trades);
+            }
+            trades.add(trade);
+            if (journal != null) {
+                journal.appendTrade(stockSymbols[i], tradeTypes[i], dateTime, quantities[i], totalPrices[i],
+                                    dividends[i]);
+            }
+            statuses[i] = TradeStatus.Accepted;
+            accepted++;
+        }
+        this.metrics.countTrades(accepted, count - accepted);
+
+        for (Map.Entry<StockEntry, List<Trade>> stockTrades: tradesByStock.entrySet()) {
+            StockEntry entry = stockTrades.getKey();
+            entry.getTradesManager().addTrades(stockTrades.getValue());
+            this.allSharesIndex.markDirty(entry.getIndexMember());
+            this.analyticsPublisher.markChanged(entry.getTopic());
+        }
+
+        return statuses;
     }
 
     /**
@@ -70,8 +409,9 @@ public class TradesManager {
      * @param stockType Type of the stock. Cannot be null
      * @param parValue Par value. Must be positive value
      * @param fixedDividend Fixed dividend. In case of {@link StockType#Preferred preferred} type must be positive
+     * @return Dense id of the stock. Id is assigned when the stock is added and doesn't change on update
      */
-    public void addOrUpdateStock(String stockSymbol, StockType stockType, int parValue, int fixedDividend) {
+    public int addOrUpdateStock(String stockSymbol, StockType stockType, int parValue, int fixedDividend) {
         // Check input parameters
         if (stockSymbol == null) {
             throw new RuntimeException("Stock symbol cannot be null");
@@ -89,28 +429,69 @@ public class TradesManager {
             throw new RuntimeException("Invalid par value");
         }
 
-        Lock lock = this.readWriteLock.writeLock();
-        try {
-            lock.lock();
-            Stock stock = this.stocksMap.remove(stockSymbol);
-            StockTradesManager stockTradesManager = null;
-            if (stock == null) {
-                stock = new Stock();
-                stock.setSymbol(stockSymbol);
-                stockTradesManager = new StockTradesManager();
-            } else {
-                stockTradesManager = this.tradesMap.remove(stock);
-            }
-
-            stock.setType(stockType);
-            stock.setParValue(parValue);
-            stock.setFixedDividend(fixedDividend);
+        // Stock is copied on write, so readers never see partially updated stock
+        final Stock stock = new Stock();
+        stock.setSymbol(stockSymbol);
+        stock.setType(stockType);
+        stock.setParValue(parValue);
+        stock.setFixedDividend(fixedDividend);
 
-            this.stocksMap.put(stockSymbol, stock);
-            this.tradesMap.put(stock, stockTradesManager);
+        StockEntry entry;
+        this.journalLock.readLock().lock();
+        try {
+            entry = this.computeStockEntry(stockSymbol, stock);
         } finally {
-            lock.unlock();
+            this.journalLock.readLock().unlock();
         }
+        this.analyticsPublisher.markChanged(entry.getTopic());
+        return entry.getStockId();
+    }
+
+    /**
+     * Journal the stock and replace its entry, or create new entry if the stock is new
+     */
+    private StockEntry computeStockEntry(String stockSymbol, final Stock stock) {
+        return this.stocksMap.compute(stockSymbol, new BiFunction<String, StockEntry, StockEntry>() {
+            @Override
+            public StockEntry apply(String symbol, StockEntry entry) {
+                TradesJournal journal = TradesManager.this.journal;
+                if (journal != null) {
+                    journal.appendStock(stock);
+                }
+
+                StockEntry newEntry;
+                if (entry != null) {
+                    newEntry = new StockEntry(entry.getStockId(), stock, entry.getTradesManager(),
+                                              entry.getIndexMember(), entry.getTopic());
+                    entry.markReplaced();
+                    AnalyticsCache analyticsCache = TradesManager.this.analyticsCache;
+                    if (analyticsCache != null) {
+                        analyticsCache.remove(entry);
+                    }
+                } else {
+                    StockTradesManager stockTradesManager = new StockTradesManager(retentionTime, maxTradesPerStock,
+                                                                                   timeSource);
+                    stockTradesManager.setCandleInterval(candleInterval, candlesCount);
+                    newEntry = new StockEntry(stocksById.nextId(), stock, stockTradesManager,
+                                              allSharesIndex.addMember(stockTradesManager),
+                                              new AnalyticsPublisher.Topic(symbol));
+                }
+                // updates of the same symbol are serialized by the map, so the table gets the newest entry
+                stocksById.set(newEntry);
+                return newEntry;
+            }
+        });
+    }
+
+    /**
+     * Get id of given stock. Id can be used instead of the symbol to avoid hashing of the symbol on every call
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Dense id of the stock
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public int getStockId(String stockSymbol) throws StockNotInitializedException {
+        return this.getStockEntry(stockSymbol).getStockId();
     }
 
     /**
@@ -120,22 +501,37 @@ public class TradesManager {
      * @throws StockNotInitializedException In case that stock doesn't exists
      */
     public float calculateDividendYield(String stockSymbol) throws StockNotInitializedException {
-        float dividendYield = 0;
-        Stock stock = this.getStock(stockSymbol);
-        StockTradesManager stockTradesManager = this.getStockTradesManager(stock);
-        Trade lastTrade = stockTradesManager.getLastTrade();
+        return this.calculateDividendYield(this.getStockEntry(stockSymbol));
+    }
 
-        switch (stock.getType()) {
-            case Preferred:
-                dividendYield = ( ((float)stock.getFixedDividend() / 100) * stock.getParValue()) /
-                                ((float)(this.calculateStockPrice(stockSymbol)));
-                break;
-            default:
-                dividendYield = lastTrade.getDividend() / (float)this.calculateStockPrice(stockSymbol);
-                break;
-        }
+    /**
+     * Calculates dividend yield for stock given by its id
+     * @param stockId Id of the stock
+     * @return Calculated dividend yield
+     * @throws StockNotInitializedException In case that stock doesn't exists
+     */
+    public float calculateDividendYield(int stockId) throws StockNotInitializedException {
+        return this.calculateDividendYield(this.getStockEntry(stockId));
+    }
+
+    /**
+     * Calculates dividend yield and records its latency
+     */
+    private float calculateDividendYield(StockEntry entry) {
+        long startTime = this.metrics.start();
+        try {
+            StockAnalytics cachedAnalytics = this.getCachedAnalytics(entry);
+            if (cachedAnalytics != null && cachedAnalytics.getLastTrade() != null) {
+                return cachedAnalytics.getDividendYield();
+            }
 
-        return dividendYield;
+            StockTradesManager stockTradesManager = entry.getTradesManager();
+            Trade lastTrade = stockTradesManager.getLastTrade();
+
+            return calculateDividendYield(entry.getStock(), lastTrade, stockTradesManager.calculateStockPrice());
+        } finally {
+            this.metrics.record(this.metrics.calculateDividendYield, startTime);
+        }
     }
 
     /**
@@ -145,11 +541,90 @@ public class TradesManager {
      * @throws StockNotInitializedException In case that stock doesn't exists
      */
     public float calculatePERatio(String stockSymbol) throws StockNotInitializedException {
-        Stock stock = this.getStock(stockSymbol);
-        StockTradesManager stockTradesManager = this.getStockTradesManager(stock);
-        Trade lastTrade = stockTradesManager.getLastTrade();
+        return this.calculatePERatio(this.getStockEntry(stockSymbol));
+    }
 
-        return this.calculateStockPrice(stockSymbol) / (float)lastTrade.getDividend();
+    /**
+     * Calculate P/E Ratio for stock given by its id
+     * @param stockId Id of the stock
+     * @return P/E Ratio value
+     * @throws StockNotInitializedException In case that stock doesn't exists
+     */
+    public float calculatePERatio(int stockId) throws StockNotInitializedException {
+        return this.calculatePERatio(this.getStockEntry(stockId));
+    }
+
+    /**
+     * Calculate P/E Ratio and record its latency
+     */
+    private float calculatePERatio(StockEntry entry) {
+        long startTime = this.metrics.start();
+        try {
+            StockAnalytics cachedAnalytics = this.getCachedAnalytics(entry);
+            if (cachedAnalytics != null && cachedAnalytics.getLastTrade() != null) {
+                return cachedAnalytics.getPeRatio();
+            }
+
+            StockTradesManager stockTradesManager = entry.getTradesManager();
+            Trade lastTrade = stockTradesManager.getLastTrade();
+
+            return stockTradesManager.calculateStockPrice() / (float)lastTrade.getDividend();
+        } finally {
+            this.metrics.record(this.metrics.calculatePERatio, startTime);
+        }
+    }
+
+    /**
+     * Copy the last trade of given stock into given holder, so the holder can be reused between calls
+     *
+     * @param stockSymbol Symbol of the stock
+     * @param trade Holder that is filled with the last trade
+     * @return <code>false</code> if the stock has no trades and the holder is not changed
+     * @throws StockNotInitializedException In case that stock doesn't exists
+     */
+    public boolean readLastTrade(String stockSymbol, Trade trade) throws StockNotInitializedException {
+        return this.getStockTradesManager(stockSymbol).readLastTrade(trade);
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of given stock together with last trade and volume
+     * in calculation interval. All values come from single lookup and single read of trades.
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Calculated analytics
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public StockAnalytics getStockAnalytics(String stockSymbol) throws StockNotInitializedException {
+        return this.getStockAnalytics(this.getStockEntry(stockSymbol));
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of stock given by its id
+     *
+     * @param stockId Id of the stock
+     * @return Calculated analytics
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public StockAnalytics getStockAnalytics(int stockId) throws StockNotInitializedException {
+        return this.getStockAnalytics(this.getStockEntry(stockId));
+    }
+
+    /**
+     * Calculate analytics of the stock and record its latency
+     */
+    private StockAnalytics getStockAnalytics(StockEntry entry) {
+        long startTime = this.metrics.start();
+        try {
+            StockAnalytics cachedAnalytics = this.getCachedAnalytics(entry);
+            if (cachedAnalytics != null) {
+                // cached instance is shared, so caller gets its own copy
+                return AnalyticsCache.copy(cachedAnalytics);
+            }
+
+            return calculateStockAnalytics(entry, this.timeSource.currentTimeMillis());
+        } finally {
+            this.metrics.record(this.metrics.getStockAnalytics, startTime);
+        }
     }
 
     /**
@@ -159,91 +634,602 @@ public class TradesManager {
      * @throws StockNotInitializedException If stock is not found
      */
     public int calculateStockPrice(String stockSymbol) throws StockNotInitializedException {
-        Stock stock = this.getStock(stockSymbol);
-        StockTradesManager stockTradesManager = this.getStockTradesManager(stock);
-        Iterator<Trade> tradesIterator = stockTradesManager.getAllTradesInCalcInterval();
+        return this.calculateStockPrice(this.getStockEntry(stockSymbol));
+    }
+
+    /**
+     * Calculate stock price of stock given by its id from all trades in past interval
+     * @param stockId Id of the stock
+     * @return Calculated price in pennies
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public int calculateStockPrice(int stockId) throws StockNotInitializedException {
+        return this.calculateStockPrice(this.getStockEntry(stockId));
+    }
+
+    /**
+     * Calculate stock price and record its latency
+     */
+    private int calculateStockPrice(StockEntry entry) {
+        long startTime = this.metrics.start();
+        try {
+            StockAnalytics cachedAnalytics = this.getCachedAnalytics(entry);
+            if (cachedAnalytics != null) {
+                return cachedAnalytics.getStockPrice();
+            }
 
-        int tradePriceAndQuantity = 0;
-        int quantity = 0;
-        while(tradesIterator.hasNext()) {
-            Trade trade = tradesIterator.next();
-            tradePriceAndQuantity += trade.getTotalPrice() * trade.getQuantity();
-            quantity += trade.getQuantity();
+            return entry.getTradesManager().calculateStockPrice();
+        } finally {
+            this.metrics.record(this.metrics.calculateStockPrice, startTime);
         }
+    }
 
-        return (int)(tradePriceAndQuantity / (float)quantity);
+    /**
+     * Calculate stock price from all trades in window of given length that ends now
+     *
+     * @param stockSymbol Symbol of the stock
+     * @param windowLength Length of the window in millis, e.g. one minute or one hour
+     * @return Calculated price in pennies
+     * @throws StockNotInitializedException If stock is not found
+     * @see #getTradesAggregate(String, long)
+     */
+    public int calculateStockPrice(String stockSymbol, long windowLength) throws StockNotInitializedException {
+        return this.getTradesAggregate(stockSymbol, windowLength).getStockPrice();
     }
 
     /**
-     * Calculates GBCE All Shares Index based on Geometric Mean of prices for all stocks
+     * Aggregate trades of given stock in window of given length that ends now. Window is combined from
+     * pre-aggregated time buckets, its start is rounded down to second, or to minute for windows longer than
+     * two minutes.
+     *
+     * @param stockSymbol Symbol of the stock
+     * @param windowLength Length of the window in millis. Must be positive and not longer than one hour
+     * @return Volume weighted price, volume, open, high, low and close price of the window
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public TradesAggregate getTradesAggregate(String stockSymbol, long windowLength)
+            throws StockNotInitializedException {
+        return this.getStockTradesManager(stockSymbol).getTradesAggregate(windowLength,
+                                                                          this.timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Read recent OHLCV candles of given stock. Candles are built when trades are added.
+     *
+     * @param stockSymbol Symbol of the stock
+     * @return Candles ordered by time, the oldest first. The last candle is not closed if its interval
+     * is not finished
+     * @throws StockNotInitializedException If stock is not found
+     * @see #setCandleInterval(long, int)
+     */
+    public List<Candle> getCandles(String stockSymbol) throws StockNotInitializedException {
+        return this.getStockTradesManager(stockSymbol).getCandles();
+    }
+
+    /**
+     * Change candle interval and number of kept candles of all stocks. Default is 60 one minute candles.
+     * Already built candles are dropped, so it should be set before trades are added.
+     *
+     * @param candleInterval Length of candle interval in millis. Must be positive value
+     * @param candlesCount Number of kept candles of each stock. Must be positive value
+     */
+    public synchronized void setCandleInterval(long candleInterval, int candlesCount) {
+        if (candleInterval <= 0) {
+            throw new RuntimeException("Invalid candle interval");
+        }
+
+        if (candlesCount <= 0) {
+            throw new RuntimeException("Invalid candles count");
+        }
+
+        this.candleInterval = candleInterval;
+        this.candlesCount = candlesCount;
+        for (StockEntry entry: this.stocksMap.values()) {
+            entry.getTradesManager().setCandleInterval(candleInterval, candlesCount);
+        }
+    }
+
+    /**
+     * Calculates GBCE All Shares Index based on Geometric Mean of prices for all stocks.<br/>
+     * Index is maintained incrementally - only stocks with new or expired trades are recalculated, and
+     * calculated value is reused within {@link #setGBCEAllSharesIndexMaxLag(long) max lag}.
      * @return Calculated value
      */
     public double calculateGBCEAllSharesIndex() {
-        // Get prices from all stocks
-        Lock lock = this.readWriteLock.readLock();
-        List<Integer> stockPricesList = new ArrayList<Integer>();
+        long startTime = this.metrics.start();
         try {
-            lock.lock();
+            return this.allSharesIndex.getValue(this.timeSource.currentTimeMillis());
+        } finally {
+            this.metrics.record(this.metrics.calculateGBCEAllSharesIndex, startTime);
+        }
+    }
 
-            for (String stockSymbol: this.stocksMap.keySet()) {
-                try {
-                    stockPricesList.add(this.calculateStockPrice(stockSymbol));
-                } catch (StockNotInitializedException e) { // can't happen
-                }
-            }
+    /**
+     * Set max time for which calculated GBCE All Shares Index can be reused. Default is zero - index is
+     * always up to date.
+     *
+     * @param maxLag Max lag in millis. Cannot be negative
+     */
+    public void setGBCEAllSharesIndexMaxLag(long maxLag) {
+        this.allSharesIndex.setMaxLag(maxLag);
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of all stocks and GBCE All Shares Index in single pass
+     * using common fork join pool.
+     *
+     * @return Analytics of all stocks
+     */
+    public MarketAnalytics calculateMarketAnalytics() {
+        return this.calculateMarketAnalytics(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calculate price, dividend yield and P/E Ratio of all stocks and GBCE All Shares Index in single pass.<br/>
+     * Stocks are calculated in parallel by given fork join pool. All stocks are calculated for the same time
+     * and index is calculated from the same prices.
+     *
+     * @param pool Pool used for calculation. Cannot be <code>null</code>
+     * @return Analytics of all stocks
+     */
+    public MarketAnalytics calculateMarketAnalytics(ForkJoinPool pool) {
+        long startTime = this.metrics.start();
+        try {
+            return this.calculateMarketAnalytics(pool, this.timeSource.currentTimeMillis());
         } finally {
-            lock.unlock();
+            this.metrics.record(this.metrics.calculateMarketAnalytics, startTime);
         }
+    }
+
+    /**
+     * Calculate analytics of all stocks for given time
+     */
+    private MarketAnalytics calculateMarketAnalytics(ForkJoinPool pool, long currentTime) {
+        StockEntry[] entries = this.stocksMap.values().toArray(new StockEntry[0]);
+        StockAnalytics[] results = new StockAnalytics[entries.length];
+
+        pool.invoke(new MarketAnalyticsTask(entries, results, 0, entries.length, currentTime));
 
         // calculate geometric mean
+        Map<String, StockAnalytics> stockAnalyticsMap = new HashMap<String, StockAnalytics>(results.length * 2);
         double gmLog = 0.0d;
-        for (Integer price: stockPricesList) {
-            if (price.intValue() == 0) {
-                return 0;
+        boolean zeroPrice = false;
+        for (StockAnalytics stockAnalytics: results) {
+            stockAnalyticsMap.put(stockAnalytics.getStockSymbol(), stockAnalytics);
+            if (stockAnalytics.getStockPrice() == 0) {
+                zeroPrice = true;
+            } else {
+                gmLog += Math.log(stockAnalytics.getStockPrice());
+            }
+        }
+        double allSharesIndex = zeroPrice ? 0 : Math.exp(gmLog / results.length);
+
+        return new MarketAnalytics(currentTime, stockAnalyticsMap, allSharesIndex);
+    }
+
+    /**
+     * Evict trades older than retention time for all stocks
+     *
+     * @return Number of evicted trades
+     */
+    public long evictTrades() {
+        long evicted = 0;
+        for (StockEntry entry: this.stocksMap.values()) {
+            evicted += entry.getTradesManager().evictTrades();
+        }
+
+        return evicted;
+    }
+
+    /**
+     * @return Number of all evicted trades for all stocks
+     */
+    public long getEvictedTradesCount() {
+        long evicted = 0;
+        for (StockEntry entry: this.stocksMap.values()) {
+            evicted += entry.getTradesManager().getEvictedTradesCount();
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Start background thread that periodically evicts expired trades.
+     * Trades are evicted lazily on write anyway - sweeper cleans up stocks that are not traded anymore.
+     *
+     * @param period Period between two sweeps in millis. Must be positive value
+     */
+    public synchronized void startEvictionSweeper(long period) {
+        if (period <= 0) {
+            throw new RuntimeException("Invalid period value");
+        }
+
+        if (this.evictionSweeper != null) {
+            throw new RuntimeException("Eviction sweeper is already started");
+        }
+
+        this.evictionSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "trades-eviction-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.evictionSweeper.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                evictTrades();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop background eviction thread if it is started
+     */
+    public synchronized void stopEvictionSweeper() {
+        if (this.evictionSweeper != null) {
+            this.evictionSweeper.shutdownNow();
+            this.evictionSweeper = null;
+        }
+    }
+
+    /**
+     * Subscribe to analytics updates of given stock. Updates are pushed by publisher thread, see
+     * {@link #startAnalyticsPublisher(long)}. Listener receives current analytics first, then analytics after
+     * trades are added or leave calculation interval - at most one update per publish interval.
+     *
+     * @param stockSymbol Symbol of the stock
+     * @param listener Listener of the updates. Cannot be <code>null</code>
+     * @return Subscription that removes the listener
+     * @throws StockNotInitializedException If stock is not found
+     */
+    public Subscription subscribe(String stockSymbol, StockAnalyticsListener listener)
+            throws StockNotInitializedException {
+        if (listener == null) {
+            throw new RuntimeException("Listener cannot be null");
+        }
+
+        StockEntry entry = this.getStockEntry(stockSymbol);
+        Subscription subscription = this.analyticsPublisher.subscribe(entry.getTopic(), listener);
+        this.analyticsPublisher.markChanged(entry.getTopic());
+        return subscription;
+    }
+
+    /**
+     * Subscribe to GBCE All Share Index updates. Updates are pushed by publisher thread, see
+     * {@link #startAnalyticsPublisher(long)}. Listener receives current value first, then every changed value -
+     * at most one update per publish interval.
+     *
+     * @param listener Listener of the updates. Cannot be <code>null</code>
+     * @return Subscription that removes the listener
+     */
+    public Subscription subscribeAllSharesIndex(AllSharesIndexListener listener) {
+        if (listener == null) {
+            throw new RuntimeException("Listener cannot be null");
+        }
+
+        return this.analyticsPublisher.subscribeAllSharesIndex(listener);
+    }
+
+    /**
+     * Start background thread that pushes analytics updates to listeners. Changes are coalesced, so every stock
+     * and the index is published at most once per period. Adding of trades is never blocked by listeners.
+     *
+     * @param period Period between two publications in millis. Must be positive value
+     */
+    public synchronized void startAnalyticsPublisher(long period) {
+        if (period <= 0) {
+            throw new RuntimeException("Invalid period value");
+        }
+
+        if (this.analyticsPublisherExecutor != null) {
+            throw new RuntimeException("Analytics publisher is already started");
+        }
+
+        this.analyticsPublisherExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "analytics-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.analyticsPublisherExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    analyticsPublisher.publish();
+                } catch (Throwable e) {
+                    // exception would cancel all next runs of the publisher
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop background thread that pushes analytics updates if it is started
+     */
+    public synchronized void stopAnalyticsPublisher() {
+        if (this.analyticsPublisherExecutor != null) {
+            this.analyticsPublisherExecutor.shutdownNow();
+            this.analyticsPublisherExecutor = null;
+        }
+    }
+
+    /**
+     * Open write-ahead journal with default segment size.
+     *
+     * @param directory Directory with journal files
+     * @throws IOException If journal cannot be read or created
+     * @see #openJournal(File, int)
+     */
+    public void openJournal(File directory) throws IOException {
+        this.openJournal(directory, TradesJournal.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open write-ahead journal in given directory. Stocks and trades within retention time that are already
+     * journaled are recovered first, then all accepted trades and stock changes are journaled. Journal files with
+     * trades older than retention time are deleted.<br/>
+     * Journal must be opened before trades are added. Stock symbols are limited to 16 bytes while journal is open.
+     *
+     * @param directory Directory with journal files. Created if it doesn't exist
+     * @param segmentSize Size of single journal file in bytes
+     * @throws IOException If journal cannot be read or created
+     */
+    public synchronized void openJournal(File directory, int segmentSize) throws IOException {
+        if (this.journal != null) {
+            throw new RuntimeException("Journal is already opened");
+        }
+
+        TradesJournal journal = new TradesJournal(directory, segmentSize, this.retentionTime);
+        journal.recover(this, this.timeSource.currentTimeMillis() - this.retentionTime);
+
+        // stock added between the snapshot and publication of the journal would not be journaled
+        this.journalLock.writeLock().lock();
+        try {
+            List<Stock> stocks = new ArrayList<Stock>();
+            for (StockEntry entry: this.stocksMap.values()) {
+                stocks.add(entry.getStock());
             }
-            gmLog += Math.log(price);
+            journal.start(stocks);
+            this.journal = journal;
+        } finally {
+            this.journalLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Close write-ahead journal if it is opened. Journal files are flushed to disk.
+     */
+    public synchronized void closeJournal() {
+        TradesJournal journal = this.journal;
+        if (journal != null) {
+            this.journal = null;
+            journal.close();
         }
+    }
 
-        return Math.exp(gmLog / stockPricesList.size());
+    /**
+     * Enable or disable recording of trade counters and latencies of adding trades and calculations. Metrics are
+     * disabled by default. Latency of adding trade is sampled, so the ingest path reads clock only for
+     * every 64th trade on average.
+     *
+     * @param enabled New state
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        this.metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Take snapshot of all metrics. Gauges (retained trades and trades in calculation interval of each stock)
+     * are read when the snapshot is taken.
+     *
+     * @return Counters, latencies and gauges
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        return this.metrics.getMetricsSnapshot();
+    }
+
+    /**
+     * Register metrics to platform MBean server as
+     * <code>com.jpmorgan.test:type=TradesManager,name=&lt;name&gt;</code>
+     *
+     * @param name Name of this trades manager
+     * @throws JMException If MBean cannot be registered
+     */
+    public synchronized void registerMetricsMBean(String name) throws JMException {
+        if (this.metricsObjectName != null) {
+            throw new RuntimeException("Metrics MBean is already registered");
+        }
+
+        ObjectName objectName = new ObjectName("com.jpmorgan.test:type=TradesManager,name=" +
+                                               ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, objectName);
+        this.metricsObjectName = objectName;
+    }
+
+    /**
+     * Unregister metrics MBean if it is registered
+     *
+     * @throws JMException If MBean cannot be unregistered
+     */
+    public synchronized void unregisterMetricsMBean() throws JMException {
+        ObjectName objectName = this.metricsObjectName;
+        if (objectName != null) {
+            this.metricsObjectName = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+    }
+
+    /**
+     * @return Number of all stocks
+     */
+    int getStocksCount() {
+        return this.stocksMap.size();
+    }
+
+    /**
+     * @return Source of current time
+     */
+    TimeSource getTimeSource() {
+        return this.timeSource;
+    }
+
+    /**
+     * Calculate all analytics of single stock
+     *
+     * @param entry Stock with its trades
+     * @param currentTime End of calculation interval
+     * @return Calculated analytics
+     */
+    static StockAnalytics calculateStockAnalytics(StockEntry entry, long currentTime) {
+        return calculateStockAnalytics(entry, currentTime, new WindowStatistics());
     }
 
     /**
-     * Get current Stock by given symbol
+     * Calculate all analytics of single stock using given holder for sums of the window, so calculation of
+     * many stocks reuses single holder
+     *
+     * @param entry Stock with its trades
+     * @param currentTime End of calculation interval
+     * @param statistics Holder that is filled with sums of calculation interval
+     * @return Calculated analytics
+     */
+    static StockAnalytics calculateStockAnalytics(StockEntry entry, long currentTime, WindowStatistics statistics) {
+        Stock stock = entry.getStock();
+        StockTradesManager stockTradesManager = entry.getTradesManager();
+        // last trade comes from the same version of trades as the sums
+        Trade lastTrade = stockTradesManager.readCalcIntervalStatistics(currentTime, statistics);
+        int stockPrice = statistics.getStockPrice();
+
+        StockAnalytics stockAnalytics = new StockAnalytics();
+        stockAnalytics.setStockSymbol(stock.getSymbol());
+        stockAnalytics.setStockPrice(stockPrice);
+        stockAnalytics.setLastTrade(lastTrade);
+        stockAnalytics.setVolume(statistics.getQuantitySum());
+        stockAnalytics.setTradesCount(statistics.getTradesCount());
+        stockAnalytics.setDividendYield(calculateDividendYield(stock, lastTrade, stockPrice));
+        stockAnalytics.setPeRatio(lastTrade == null ? Float.NaN : stockPrice / (float)lastTrade.getDividend());
+        return stockAnalytics;
+    }
+
+    /**
+     * Calculate dividend yield from given values
+     *
+     * @param stock The stock
+     * @param lastTrade Last trade of the stock. Can be <code>null</code>
+     * @param stockPrice Stock price
+     * @return Dividend yield. <code>NaN</code> if there are no trades in calculation interval or it can't be
+     * calculated without last trade
+     */
+    private static float calculateDividendYield(Stock stock, Trade lastTrade, int stockPrice) {
+        if (stockPrice == PriceArithmetic.EMPTY_PRICE) {
+            return Float.NaN;
+        }
+
+        switch (stock.getType()) {
+            case Preferred:
+                return ( ((float)stock.getFixedDividend() / 100) * stock.getParValue()) / ((float)stockPrice);
+            default:
+                return lastTrade == null ? Float.NaN : lastTrade.getDividend() / (float)stockPrice;
+        }
+    }
+
+    /**
+     * Enable cache of stock price, dividend yield, P/E Ratio and stock analytics. Cached values are reused
+     * until new trade of the stock is added or its oldest trade leaves calculation interval, so repeated
+     * queries between trades don't read the trades again. Replaces current cache.<br/>
+     * Analytics returned by {@link #getStockAnalytics(String)} are copied from the cached value, so callers
+     * can't modify the cache.
+     *
+     * @param maxCachedStocks Max number of stocks with cached analytics. Must be positive value
+     * @param maxStaleness Time in millis for which cached analytics are reused even if trades changed. Zero
+     *                     if cached analytics must always be exact
+     */
+    public void enableAnalyticsCache(int maxCachedStocks, long maxStaleness) {
+        this.analyticsCache = new AnalyticsCache(maxCachedStocks, maxStaleness);
+    }
+
+    /**
+     * Disable cache of analytics. Cached values are ignored from now on
+     */
+    public void disableAnalyticsCache() {
+        this.analyticsCache = null;
+    }
+
+    /**
+     * Get current Stock by given symbol.<br/>
+     * Returned stock is shared snapshot of reference data and must not be modified.
      *
      * @param stockSymbol symbol of the stock
      * @return Stock
      * @throws StockNotInitializedException Throw exception if stock is not found
      */
     public Stock getStock(String stockSymbol) throws StockNotInitializedException {
-        Lock lock = this.readWriteLock.readLock();
-        Stock stock = null;
-        try {
-            lock.lock();
-            stock = this.stocksMap.get(stockSymbol);
-        } finally {
-            lock.unlock();
+        return this.getStockEntry(stockSymbol).getStock();
+    }
+
+    /**
+     * @return Cache of analytics, <code>null</code> if cache is disabled
+     */
+    AnalyticsCache getAnalyticsCache() {
+        return this.analyticsCache;
+    }
+
+    /**
+     * @return Analytics from cache, <code>null</code> if cache is disabled
+     */
+    private StockAnalytics getCachedAnalytics(StockEntry entry) {
+        AnalyticsCache analyticsCache = this.analyticsCache;
+        if (analyticsCache == null) {
+            return null;
         }
 
-        if (stock == null) {
+        return analyticsCache.getStockAnalytics(entry, this.timeSource.currentTimeMillis());
+    }
+
+    /**
+     * Get Trades manager by given stock symbol
+     *
+     * @param stockSymbol symbol of the stock
+     * @return StockTradesManager
+     * @throws StockNotInitializedException Throw exception if stock is not found
+     */
+    private StockTradesManager getStockTradesManager(String stockSymbol) throws StockNotInitializedException {
+        return this.getStockEntry(stockSymbol).getTradesManager();
+    }
+
+    /**
+     * Get registry entry by given stock symbol
+     *
+     * @param stockSymbol symbol of the stock
+     * @return Stock with its trades manager
+     * @throws StockNotInitializedException Throw exception if stock is not found
+     */
+    private StockEntry getStockEntry(String stockSymbol) throws StockNotInitializedException {
+        StockEntry entry = stockSymbol == null ? null : this.stocksMap.get(stockSymbol);
+        if (entry == null) {
             throw new StockNotInitializedException("Stock not initialized!", stockSymbol);
         }
 
-        return stock;
+        return entry;
     }
 
     /**
-     * Get Trades manager by given stock
+     * Get registry entry by given stock id
      *
-     * @param stock the stock
-     * @return StockTradesManager
+     * @param stockId id of the stock
+     * @return Stock with its trades manager
+     * @throws StockNotInitializedException Throw exception if stock is not found
      */
-    private StockTradesManager getStockTradesManager(Stock stock) {
-        Lock lock = this.readWriteLock.readLock();
-        try {
-            lock.lock();
-            return this.tradesMap.get(stock);
-        } finally {
-            lock.unlock();
+    private StockEntry getStockEntry(int stockId) throws StockNotInitializedException {
+        StockEntry entry = this.stocksById.get(stockId);
+        if (entry == null) {
+            throw new StockNotInitializedException("Stock not initialized!", String.valueOf(stockId));
         }
+
+        return entry;
     }
 }
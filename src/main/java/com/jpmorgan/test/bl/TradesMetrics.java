@@ -0,0 +1,252 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.LatencySnapshot;
+import com.jpmorgan.test.pojo.MetricsSnapshot;
+import com.jpmorgan.test.pojo.StockMetrics;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of single trades manager.<br/>
+ * Counters are striped {@link LongAdder}s, so writers of different stocks don't contend on them. Latencies are
+ * recorded in {@link LatencyHistogram histograms} - adding of trade is sampled, so the ingest path reads clock
+ * only for every {@link #ADD_TRADE_SAMPLING}th trade on average. When metrics are disabled, only single volatile
+ * read is done per call.<br/>
+ * Gauges of retained trades and window sizes are not maintained on write, they are read from trades managers
+ * when snapshot is taken.
+ */
+final class TradesMetrics implements TradesMetricsMXBean {
+    /** Name of add trade latency in snapshot */
+    static final String ADD_TRADE = "addTrade";
+    /** Name of stock price latency in snapshot */
+    static final String CALCULATE_STOCK_PRICE = "calculateStockPrice";
+    /** Name of dividend yield latency in snapshot */
+    static final String CALCULATE_DIVIDEND_YIELD = "calculateDividendYield";
+    /** Name of P/E Ratio latency in snapshot */
+    static final String CALCULATE_PE_RATIO = "calculatePERatio";
+    /** Name of stock analytics latency in snapshot */
+    static final String GET_STOCK_ANALYTICS = "getStockAnalytics";
+    /** Name of index latency in snapshot */
+    static final String CALCULATE_GBCE_ALL_SHARES_INDEX = "calculateGBCEAllSharesIndex";
+    /** Name of market analytics latency in snapshot */
+    static final String CALCULATE_MARKET_ANALYTICS = "calculateMarketAnalytics";
+    /** Average number of trades per one latency sample. Must be power of 2 */
+    static final int ADD_TRADE_SAMPLING = 64;
+    /** Start time of call that is not measured */
+    static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    /** All stocks by symbol */
+    private final Map<String, StockEntry> stocksMap;
+    /** Source of current time */
+    private final TimeSource timeSource;
+    /** Number of accepted trades */
+    private final LongAdder acceptedTrades;
+    /** Number of rejected trades */
+    private final LongAdder rejectedTrades;
+    /** Latencies by operation name */
+    private final Map<String, LatencyHistogram> histograms;
+    /** Latencies of add trade */
+    final LatencyHistogram addTrade;
+    /** Latencies of stock price */
+    final LatencyHistogram calculateStockPrice;
+    /** Latencies of dividend yield */
+    final LatencyHistogram calculateDividendYield;
+    /** Latencies of P/E Ratio */
+    final LatencyHistogram calculatePERatio;
+    /** Latencies of stock analytics */
+    final LatencyHistogram getStockAnalytics;
+    /** Latencies of index */
+    final LatencyHistogram calculateGBCEAllSharesIndex;
+    /** Latencies of market analytics */
+    final LatencyHistogram calculateMarketAnalytics;
+    /** Set while counters and latencies are recorded */
+    private volatile boolean enabled;
+
+    /**
+     * Construct disabled metrics
+     *
+     * @param stocksMap All stocks by symbol
+     * @param timeSource Source of current time
+     */
+    TradesMetrics(Map<String, StockEntry> stocksMap, TimeSource timeSource) {
+        super();
+
+        this.stocksMap = stocksMap;
+        this.timeSource = timeSource;
+        this.acceptedTrades = new LongAdder();
+        this.rejectedTrades = new LongAdder();
+        this.histograms = new LinkedHashMap<String, LatencyHistogram>();
+        this.addTrade = this.histogram(ADD_TRADE);
+        this.calculateStockPrice = this.histogram(CALCULATE_STOCK_PRICE);
+        this.calculateDividendYield = this.histogram(CALCULATE_DIVIDEND_YIELD);
+        this.calculatePERatio = this.histogram(CALCULATE_PE_RATIO);
+        this.getStockAnalytics = this.histogram(GET_STOCK_ANALYTICS);
+        this.calculateGBCEAllSharesIndex = this.histogram(CALCULATE_GBCE_ALL_SHARES_INDEX);
+        this.calculateMarketAnalytics = this.histogram(CALCULATE_MARKET_ANALYTICS);
+    }
+
+    /**
+     * @return Start time of measured call, {@link #NOT_MEASURED} if metrics are disabled
+     */
+    long start() {
+        return this.enabled ? System.nanoTime() : NOT_MEASURED;
+    }
+
+    /**
+     * @return Start time of sampled add trade call, {@link #NOT_MEASURED} if the call is not sampled
+     */
+    long startAddTrade() {
+        if (!this.enabled || (ThreadLocalRandom.current().nextInt() & (ADD_TRADE_SAMPLING - 1)) != 0) {
+            return NOT_MEASURED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record latency of measured call
+     *
+     * @param histogram Histogram of the operation
+     * @param startTime Value returned by {@link #start()}
+     */
+    void record(LatencyHistogram histogram, long startTime) {
+        if (startTime != NOT_MEASURED) {
+            histogram.record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Count added trades
+     *
+     * @param accepted Number of accepted trades
+     * @param rejected Number of rejected trades
+     */
+    void countTrades(int accepted, int rejected) {
+        if (this.enabled) {
+            if (accepted != 0) {
+                this.acceptedTrades.add(accepted);
+            }
+            if (rejected != 0) {
+                this.rejectedTrades.add(rejected);
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getAcceptedTradesCount() {
+        return this.acceptedTrades.sum();
+    }
+
+    @Override
+    public long getRejectedTradesCount() {
+        return this.rejectedTrades.sum();
+    }
+
+    @Override
+    public long getRetainedTradesCount() {
+        long retainedTrades = 0;
+        for (StockEntry entry: this.stocksMap.values()) {
+            retainedTrades += entry.getTradesManager().getTradesCount();
+        }
+        return retainedTrades;
+    }
+
+    @Override
+    public int getStocksCount() {
+        return this.stocksMap.size();
+    }
+
+    @Override
+    public LatencySnapshot getAddTradeLatency() {
+        return this.addTrade.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCalculateStockPriceLatency() {
+        return this.calculateStockPrice.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCalculateDividendYieldLatency() {
+        return this.calculateDividendYield.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCalculatePERatioLatency() {
+        return this.calculatePERatio.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getStockAnalyticsLatency() {
+        return this.getStockAnalytics.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCalculateGBCEAllSharesIndexLatency() {
+        return this.calculateGBCEAllSharesIndex.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getCalculateMarketAnalyticsLatency() {
+        return this.calculateMarketAnalytics.snapshot();
+    }
+
+    @Override
+    public MetricsSnapshot getMetricsSnapshot() {
+        long currentTime = this.timeSource.currentTimeMillis();
+        WindowStatistics statistics = new WindowStatistics();
+        Map<String, StockMetrics> stockMetricsMap = new HashMap<String, StockMetrics>();
+        long retainedTrades = 0;
+        for (StockEntry entry: this.stocksMap.values()) {
+            StockTradesManager stockTradesManager = entry.getTradesManager();
+            stockTradesManager.getCalcIntervalStatistics(currentTime, statistics);
+
+            StockMetrics stockMetrics = new StockMetrics();
+            stockMetrics.setStockSymbol(entry.getStock().getSymbol());
+            stockMetrics.setTradesCount(stockTradesManager.getSequence());
+            stockMetrics.setRetainedTradesCount(stockTradesManager.getTradesCount());
+            stockMetrics.setWindowTradesCount(statistics.getTradesCount());
+            stockMetrics.setEvictedTradesCount(stockTradesManager.getEvictedTradesCount());
+            stockMetrics.setContendedWritesCount(stockTradesManager.getContendedWritesCount());
+            stockMetrics.setWriterLockWaitNanos(stockTradesManager.getWriterLockWaitNanos());
+            stockMetricsMap.put(stockMetrics.getStockSymbol(), stockMetrics);
+            retainedTrades += stockMetrics.getRetainedTradesCount();
+        }
+
+        Map<String, LatencySnapshot> latencies = new LinkedHashMap<String, LatencySnapshot>();
+        for (Map.Entry<String, LatencyHistogram> histogram: this.histograms.entrySet()) {
+            latencies.put(histogram.getKey(), histogram.getValue().snapshot());
+        }
+
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        snapshot.setSnapshotTime(currentTime);
+        snapshot.setAcceptedTradesCount(this.getAcceptedTradesCount());
+        snapshot.setRejectedTradesCount(this.getRejectedTradesCount());
+        snapshot.setRetainedTradesCount(retainedTrades);
+        snapshot.setStockMetrics(stockMetricsMap);
+        snapshot.setLatencies(latencies);
+        return snapshot;
+    }
+
+    /**
+     * Create histogram of given operation
+     */
+    private LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        this.histograms.put(name, histogram);
+        return histogram;
+    }
+}
@@ -0,0 +1,83 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.LatencySnapshot;
+import com.jpmorgan.test.pojo.MetricsSnapshot;
+
+/**
+ * JMX management interface of trades manager metrics.
+ *
+ * @see TradesManager#registerMetricsMBean(String)
+ */
+public interface TradesMetricsMXBean {
+    /**
+     * @return <code>true</code> if counters and latencies are recorded
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable recording of counters and latencies. Gauges are always available
+     *
+     * @param enabled New state
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return Number of accepted trades
+     */
+    long getAcceptedTradesCount();
+
+    /**
+     * @return Number of trades that are rejected because of invalid arguments or unknown stock
+     */
+    long getRejectedTradesCount();
+
+    /**
+     * @return Number of trades that are currently kept for all stocks
+     */
+    long getRetainedTradesCount();
+
+    /**
+     * @return Number of stocks
+     */
+    int getStocksCount();
+
+    /**
+     * @return Latencies of adding single trade. Sampled, see {@link TradesManager#setMetricsEnabled(boolean)}
+     */
+    LatencySnapshot getAddTradeLatency();
+
+    /**
+     * @return Latencies of stock price calculation
+     */
+    LatencySnapshot getCalculateStockPriceLatency();
+
+    /**
+     * @return Latencies of dividend yield calculation
+     */
+    LatencySnapshot getCalculateDividendYieldLatency();
+
+    /**
+     * @return Latencies of P/E Ratio calculation
+     */
+    LatencySnapshot getCalculatePERatioLatency();
+
+    /**
+     * @return Latencies of stock analytics calculation
+     */
+    LatencySnapshot getStockAnalyticsLatency();
+
+    /**
+     * @return Latencies of GBCE All Share Index calculation
+     */
+    LatencySnapshot getCalculateGBCEAllSharesIndexLatency();
+
+    /**
+     * @return Latencies of market analytics calculation
+     */
+    LatencySnapshot getCalculateMarketAnalyticsLatency();
+
+    /**
+     * @return All metrics including metrics of every stock
+     */
+    MetricsSnapshot getMetricsSnapshot();
+}
@@ -0,0 +1,120 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams recorded trades through {@link TradesManager trades manager} as fast as possible.
+ * Time of the trades manager is {@link SimulatedTimeSource simulated} and it is moved to time of each trade
+ * before the trade is added, so all calculations behave as if trades came in real time.<br/>
+ * Recorded file is text file with one record per line. Values are separated by comma:
+ * <ul>
+ *     <li><code>S,symbol,stockType,parValue,fixedDividend</code> - adds or updates stock</li>
+ *     <li><code>T,dateTime,symbol,tradeType,quantity,totalPrice,dividend</code> - adds trade</li>
+ * </ul>
+ * Empty lines and lines starting with <code>#</code> are skipped.
+ */
+public class TradesReplayer {
+    /** Stock record type */
+    private static final String STOCK_RECORD = "S";
+    /** Trade record type */
+    private static final String TRADE_RECORD = "T";
+
+    /** Trades manager that receives the trades */
+    private TradesManager tradesManager;
+    /** Time source of the trades manager */
+    private SimulatedTimeSource timeSource;
+
+    /**
+     * Construct replayer for given trades manager
+     *
+     * @param tradesManager Trades manager that receives the trades. Cannot be <code>null</code>
+     * @param timeSource Time source that is used by the trades manager. Cannot be <code>null</code>
+     * @throws RuntimeException If time source is not the one used by the trades manager
+     */
+    public TradesReplayer(TradesManager tradesManager, SimulatedTimeSource timeSource) {
+        super();
+
+        if (tradesManager == null || timeSource == null) {
+            throw new RuntimeException("Trades manager and time source cannot be null");
+        }
+        if (tradesManager.getTimeSource() != timeSource) {
+            throw new RuntimeException("Time source is not used by the trades manager");
+        }
+
+        this.tradesManager = tradesManager;
+        this.timeSource = timeSource;
+    }
+
+    /**
+     * Replay all records from given file
+     *
+     * @param file Recorded file in UTF-8
+     * @return Number of replayed trades
+     * @throws IOException If file cannot be read
+     * @throws StockNotInitializedException If trade of unknown stock is found
+     * @throws RuntimeException If record is not valid
+     */
+    public long replay(File file) throws IOException, StockNotInitializedException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        try {
+            return this.replay(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Replay all records from given reader. Reader is not closed.
+     *
+     * @param reader Recorded records
+     * @return Number of replayed trades
+     * @throws IOException If records cannot be read
+     * @throws StockNotInitializedException If trade of unknown stock is found
+     * @throws RuntimeException If record is not valid
+     */
+    public long replay(Reader reader) throws IOException, StockNotInitializedException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader ? (BufferedReader)reader :
+                new BufferedReader(reader, 64 * 1024);
+
+        long tradesCount = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] values = line.split(",");
+            try {
+                if (STOCK_RECORD.equals(values[0]) && values.length == 5) {
+                    this.tradesManager.addOrUpdateStock(values[1], StockType.valueOf(values[2]),
+                                                        Integer.parseInt(values[3]), Integer.parseInt(values[4]));
+                } else if (TRADE_RECORD.equals(values[0]) && values.length == 7) {
+                    long dateTime = Long.parseLong(values[1]);
+                    this.timeSource.advanceTo(dateTime);
+                    this.tradesManager.addTrade(values[2], TradeType.valueOf(values[3]), dateTime,
+                                                Integer.parseInt(values[4]), Integer.parseInt(values[5]),
+                                                Integer.parseInt(values[6]));
+                    tradesCount++;
+                } else {
+                    throw new RuntimeException("Unknown record");
+                }
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Invalid record at line " + lineNumber + ": " + line, e);
+            }
+        }
+
+        return tradesCount;
+    }
+}
@@ -0,0 +1,532 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Growable ring buffer that is keeping trades of single stock ordered by time and sequence number.<br/>
+ * All trade fields are stored in parallel primitive columns. Cumulative sums of price * quantity and quantity
+ * are stored too, so sums over any time frame are calculated by binary search and subtraction. Sums of
+ * price * quantity are 128 bit values (see {@link PriceArithmetic}), so they never overflow.<br/>
+ * Positions in the buffer are addressed by logical index that is only growing.<br/>
+ * Buffer supports single writer and multiple readers without locking:
+ * <ul>
+ *     <li>new trade is written after all published trades and published by volatile write of columns size</li>
+ *     <li>when columns are full, live trades are rolled to the start of fresh columns instead of wrapping around,
+ *     so published slots are never overwritten and readers can keep reading old columns</li>
+ *     <li>late trade moves already published trades, so it is inserted under write stamp of
+ *     {@link StampedLock} and readers validate their optimistic stamp</li>
+ *     <li>columns are frozen when {@link TradesSnapshot snapshot} is taken from them - late trade is then
+ *     inserted into copy of the columns, so snapshot stays immutable without copying on every query</li>
+ *     <li>columns that are replaced by roll are kept as spare and reused by the next roll, so buffer of stable
+ *     size doesn't allocate. Spare columns are rewritten under write stamp, so readers that still read them
+ *     retry; frozen columns are never reused. Optimistic readers address columns by slots between 0 and size
+ *     that they read once, so values of rewritten columns are never read out of bounds before validation</li>
+ * </ul>
+ * All write methods must be called by single thread at a time.
+ */
+final class TradesRingBuffer {
+    /** Initial capacity. Must be power of 2 */
+    private static final int INITIAL_CAPACITY = 1024;
+    /** All trade types, indexed by ordinal */
+    private static final TradeType[] TRADE_TYPES = TradeType.values();
+
+    /** Columns that are currently written */
+    private volatile Columns columns;
+    /** Columns replaced by the last roll, reused by the next one. Accessed only by writer */
+    private Columns spareColumns;
+    /** Logical index of oldest trade */
+    private volatile long head;
+    /** Guards moving of published trades by late trade */
+    private final StampedLock insertLock;
+
+    /**
+     * Default constructor
+     */
+    TradesRingBuffer() {
+        super();
+
+        this.columns = new Columns(INITIAL_CAPACITY);
+        this.insertLock = new StampedLock();
+    }
+
+    /**
+     * Add new trade. Trade is placed after all trades that are not newer than it - sequence number must be
+     * greater than sequence numbers of all added trades, so trades stay ordered by time and sequence number.
+     *
+     * @param sequence Sequence number of the trade
+     * @param tradeType Type of the trade
+     * @param dateTime When trade occurred
+     * @param quantity Quantity of the trade
+     * @param totalPrice Total price of the trade
+     * @param dividend Dividend of the trade
+     */
+    void add(long sequence, TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
+        Columns columns = this.columns;
+        if (columns.size == columns.dateTimes.length) {
+            Columns full = columns;
+            columns = this.roll(full);
+            this.columns = columns;
+            if (!full.frozen) {
+                this.spareColumns = full;
+            }
+        }
+
+        int size = columns.size;
+        if (size == 0 || columns.dateTimes[size - 1] <= dateTime) {
+            columns.set(size, sequence, tradeType, dateTime, quantity, totalPrice, dividend);
+            columns.size = size + 1;
+            return;
+        }
+
+        // late trade - move all newer trades in place if there is no snapshot of the columns
+        if (!columns.frozen) {
+            long stamp = this.insertLock.writeLock();
+            try {
+                if (!columns.frozen) {
+                    this.insert(columns, sequence, tradeType, dateTime, quantity, totalPrice, dividend);
+                    return;
+                }
+            } finally {
+                this.insertLock.unlockWrite(stamp);
+            }
+        }
+
+        Columns copy = this.copy(columns);
+        this.insert(copy, sequence, tradeType, dateTime, quantity, totalPrice, dividend);
+        this.columns = copy;
+    }
+
+    /**
+     * Remove oldest trade
+     */
+    void removeFirst() {
+        if (this.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        this.head++;
+    }
+
+    /**
+     * @return Number of trades in the buffer. Can be called by any thread
+     */
+    int size() {
+        long stamp = this.insertLock.tryOptimisticRead();
+        int size = this.liveSize();
+        if (!this.insertLock.validate(stamp)) {
+            stamp = this.insertLock.readLock();
+            try {
+                size = this.liveSize();
+            } finally {
+                this.insertLock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return <code>true</code> if there are no trades
+     */
+    boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * @return Time of the oldest trade
+     */
+    long getFirstDateTime() {
+        if (this.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        Columns columns = this.columns;
+        return columns.dateTimes[(int)(this.head - columns.base)];
+    }
+
+    /**
+     * Calculate average price weighted by quantity of all trades that are not older than given time.<br/>
+     * Can be called by any thread.
+     *
+     * @param fromDateTime Time of the oldest trade to include
+     * @return Calculated price in pennies rounded half up, {@link PriceArithmetic#EMPTY_PRICE} if there are
+     * no such trades
+     */
+    int getStockPrice(long fromDateTime) {
+        long stamp = this.insertLock.tryOptimisticRead();
+        int price = this.stockPrice(fromDateTime);
+        if (!this.insertLock.validate(stamp)) {
+            stamp = this.insertLock.readLock();
+            try {
+                price = this.stockPrice(fromDateTime);
+            } finally {
+                this.insertLock.unlockRead(stamp);
+            }
+        }
+        return price;
+    }
+
+    /**
+     * Read sums of all trades that are not older than given time.<br/>
+     * Can be called by any thread.
+     *
+     * @param fromDateTime Time of the oldest trade to include
+     * @param statistics Holder that is filled with the sums
+     */
+    void getWindowStatistics(long fromDateTime, WindowStatistics statistics) {
+        long stamp = this.insertLock.tryOptimisticRead();
+        this.windowStatistics(fromDateTime, statistics);
+        if (!this.insertLock.validate(stamp)) {
+            stamp = this.insertLock.readLock();
+            try {
+                this.windowStatistics(fromDateTime, statistics);
+            } finally {
+                this.insertLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Find time of the oldest trade that is not older than given time.<br/>
+     * Can be called by any thread.
+     *
+     * @param fromDateTime Time to search from
+     * @return Time of the trade or {@link Long#MAX_VALUE} if there is no such trade
+     */
+    long getFirstDateTime(long fromDateTime) {
+        long stamp = this.insertLock.tryOptimisticRead();
+        long dateTime = this.firstDateTime(fromDateTime);
+        if (!this.insertLock.validate(stamp)) {
+            stamp = this.insertLock.readLock();
+            try {
+                dateTime = this.firstDateTime(fromDateTime);
+            } finally {
+                this.insertLock.unlockRead(stamp);
+            }
+        }
+        return dateTime;
+    }
+
+    /**
+     * Take immutable snapshot of all trades that are not older than given time.<br/>
+     * Can be called by any thread. Trades added after the call are not part of the snapshot.
+     *
+     * @param fromDateTime Time of the oldest trade to include
+     * @return Snapshot of trades
+     */
+    TradesSnapshot snapshot(long fromDateTime) {
+        while (true) {
+            Columns columns = this.columns;
+            // freeze first, then check that no late trade is being inserted in place
+            columns.frozen = true;
+            long stamp = this.insertLock.tryOptimisticRead();
+            if (stamp != 0) {
+                int size = columns.size;
+                int fromSlot = this.slotOf(columns, size, fromDateTime);
+                if (this.insertLock.validate(stamp)) {
+                    return new TradesSnapshot(columns, fromSlot, size);
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Count live trades without validation of concurrent late trade insert or reuse of columns
+     */
+    private int liveSize() {
+        Columns columns = this.columns;
+        return (int)(columns.base + columns.size - this.head);
+    }
+
+    /**
+     * Calculate average price without validation of concurrent late trade insert
+     */
+    private int stockPrice(long fromDateTime) {
+        Columns columns = this.columns;
+        int size = columns.size;
+        int fromSlot = this.slotOf(columns, size, fromDateTime);
+
+        long endLow = columns.priceQuantitySumBefore(size);
+        long fromLow = columns.priceQuantitySumBefore(fromSlot);
+        return PriceArithmetic.averagePrice(columns.priceQuantitySumHighBefore(size) -
+                                            columns.priceQuantitySumHighBefore(fromSlot) -
+                                            PriceArithmetic.borrow(endLow, fromLow),
+                                            endLow - fromLow,
+                                            columns.quantitySumBefore(size) - columns.quantitySumBefore(fromSlot));
+    }
+
+    /**
+     * Read sums of trades without validation of concurrent late trade insert
+     */
+    private void windowStatistics(long fromDateTime, WindowStatistics statistics) {
+        Columns columns = this.columns;
+        int size = columns.size;
+        int fromSlot = this.slotOf(columns, size, fromDateTime);
+
+        long endLow = columns.priceQuantitySumBefore(size);
+        long fromLow = columns.priceQuantitySumBefore(fromSlot);
+        statistics.set(columns.priceQuantitySumHighBefore(size) - columns.priceQuantitySumHighBefore(fromSlot) -
+                       PriceArithmetic.borrow(endLow, fromLow),
+                       endLow - fromLow,
+                       columns.quantitySumBefore(size) - columns.quantitySumBefore(fromSlot),
+                       size - fromSlot);
+    }
+
+    /**
+     * Find time of the oldest trade without validation of concurrent late trade insert
+     */
+    private long firstDateTime(long fromDateTime) {
+        Columns columns = this.columns;
+        int size = columns.size;
+        int slot = this.slotOf(columns, size, fromDateTime);
+
+        return slot < size ? columns.dateTimes[slot] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Binary search for the first trade that is not older than given time. Returned slot is never out of
+     * the columns, even if they are concurrently rewritten
+     *
+     * @param columns Columns to search in
+     * @param size Number of published trades in columns
+     * @param dateTime Time to search for
+     * @return Slot of the trade or size if all trades are older
+     */
+    private int slotOf(Columns columns, int size, long dateTime) {
+        int low = (int)Math.min(Math.max(this.head - columns.base, 0), size);
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (columns.dateTimes[middle] < dateTime) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Insert late trade after all trades that are not newer than it, moving newer trades by one position.
+     * Columns are moved by array copy and cumulative sums are then shifted by the trade in flat loops.
+     *
+     * @param columns Columns with free slot
+     */
+    private void insert(Columns columns, long sequence, TradeType tradeType, long dateTime, int quantity,
+                        int totalPrice, int dividend) {
+        int size = columns.size;
+        int slot = this.slotOf(columns, size, dateTime + 1);
+        int moved = size - slot;
+        System.arraycopy(columns.sequences, slot, columns.sequences, slot + 1, moved);
+        System.arraycopy(columns.dateTimes, slot, columns.dateTimes, slot + 1, moved);
+        System.arraycopy(columns.quantities, slot, columns.quantities, slot + 1, moved);
+        System.arraycopy(columns.totalPrices, slot, columns.totalPrices, slot + 1, moved);
+        System.arraycopy(columns.dividends, slot, columns.dividends, slot + 1, moved);
+        System.arraycopy(columns.tradeTypes, slot, columns.tradeTypes, slot + 1, moved);
+        System.arraycopy(columns.priceQuantitySums, slot, columns.priceQuantitySums, slot + 1, moved);
+        System.arraycopy(columns.priceQuantitySumsHigh, slot, columns.priceQuantitySumsHigh, slot + 1, moved);
+        System.arraycopy(columns.quantitySums, slot, columns.quantitySums, slot + 1, moved);
+
+        long priceQuantity = (long)totalPrice * quantity;
+        for (int i = slot + 1; i <= size; i++) {
+            long low = columns.priceQuantitySums[i] + priceQuantity;
+            columns.priceQuantitySums[i] = low;
+            columns.priceQuantitySumsHigh[i] += PriceArithmetic.carry(low, priceQuantity);
+        }
+        for (int i = slot + 1; i <= size; i++) {
+            columns.quantitySums[i] += quantity;
+        }
+        columns.set(slot, sequence, tradeType, dateTime, quantity, totalPrice, dividend);
+        columns.size = size + 1;
+    }
+
+    /**
+     * Copy all live trades of full columns to the start of spare columns if they are big enough, otherwise
+     * to new columns. Spare columns are rewritten under write stamp, so readers that still read them
+     * as replaced columns don't use their values. Returned columns are not published.
+     *
+     * @param columns Full columns
+     * @return Columns with all live trades and free slots
+     */
+    private Columns roll(Columns columns) {
+        Columns spare = this.spareColumns;
+        this.spareColumns = null;
+        if (spare != null) {
+            long stamp = this.insertLock.writeLock();
+            try {
+                // snapshot may be taken from columns that are replaced just before
+                if (!spare.frozen && spare.dateTimes.length >= this.capacityFor(columns)) {
+                    this.copyTo(columns, spare);
+                    return spare;
+                }
+            } finally {
+                this.insertLock.unlockWrite(stamp);
+            }
+        }
+
+        return this.copy(columns);
+    }
+
+    /**
+     * Copy all live trades to the start of new columns. Capacity of new columns is twice the number of live
+     * trades. New columns are not published.
+     *
+     * @param columns Columns to copy
+     * @return New columns
+     */
+    private Columns copy(Columns columns) {
+        Columns copy = new Columns(this.capacityFor(columns));
+        this.copyTo(columns, copy);
+        return copy;
+    }
+
+    /**
+     * @return Capacity of columns that take all live trades of given columns, twice the number of live trades
+     */
+    private int capacityFor(Columns columns) {
+        int live = (int)(columns.base + columns.size - this.head);
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < live * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Copy all live trades to the start of target columns. Previous content of the target is dropped
+     *
+     * @param columns Columns to copy
+     * @param copy Target columns with enough capacity
+     */
+    private void copyTo(Columns columns, Columns copy) {
+        long head = this.head;
+        int from = (int)(head - columns.base);
+        int live = columns.size - from;
+
+        copy.reset(head, columns.priceQuantitySumHighBefore(from), columns.priceQuantitySumBefore(from),
+                   columns.quantitySumBefore(from));
+        System.arraycopy(columns.sequences, from, copy.sequences, 0, live);
+        System.arraycopy(columns.dateTimes, from, copy.dateTimes, 0, live);
+        System.arraycopy(columns.quantities, from, copy.quantities, 0, live);
+        System.arraycopy(columns.totalPrices, from, copy.totalPrices, 0, live);
+        System.arraycopy(columns.dividends, from, copy.dividends, 0, live);
+        System.arraycopy(columns.tradeTypes, from, copy.tradeTypes, 0, live);
+        System.arraycopy(columns.priceQuantitySums, from, copy.priceQuantitySums, 0, live);
+        System.arraycopy(columns.priceQuantitySumsHigh, from, copy.priceQuantitySumsHigh, 0, live);
+        System.arraycopy(columns.quantitySums, from, copy.quantitySums, 0, live);
+        copy.size = live;
+    }
+
+    /**
+     * Primitive columns of the buffer. Slot 0 holds trade with logical index <code>base</code>
+     */
+    static final class Columns {
+        /** Sequence numbers of trades */
+        final long[] sequences;
+        /** When trades occurred */
+        final long[] dateTimes;
+        /** Quantities of trades */
+        final int[] quantities;
+        /** Total prices of trades */
+        final int[] totalPrices;
+        /** Dividends of trades */
+        final int[] dividends;
+        /** Ordinals of trade types */
+        final byte[] tradeTypes;
+        /** Sum of price * quantity of all trades up to and including the slot, low word */
+        final long[] priceQuantitySums;
+        /** Sum of price * quantity of all trades up to and including the slot, high word */
+        final long[] priceQuantitySumsHigh;
+        /** Sum of quantity of all trades up to and including the slot */
+        final long[] quantitySums;
+        /** Logical index of the first slot */
+        long base;
+        /** Sum of price * quantity of all trades before the first slot, low word */
+        long basePriceQuantitySum;
+        /** Sum of price * quantity of all trades before the first slot, high word */
+        long basePriceQuantitySumHigh;
+        /** Sum of quantity of all trades before the first slot */
+        long baseQuantitySum;
+        /** Number of published slots */
+        volatile int size;
+        /** Set when snapshot is taken, published slots can't be moved anymore */
+        volatile boolean frozen;
+
+        Columns(int capacity) {
+            this.sequences = new long[capacity];
+            this.dateTimes = new long[capacity];
+            this.quantities = new int[capacity];
+            this.totalPrices = new int[capacity];
+            this.dividends = new int[capacity];
+            this.tradeTypes = new byte[capacity];
+            this.priceQuantitySums = new long[capacity];
+            this.priceQuantitySumsHigh = new long[capacity];
+            this.quantitySums = new long[capacity];
+        }
+
+        /**
+         * Drop all slots and move the first slot to given logical index
+         */
+        void reset(long base, long basePriceQuantitySumHigh, long basePriceQuantitySum, long baseQuantitySum) {
+            this.size = 0;
+            this.base = base;
+            this.basePriceQuantitySumHigh = basePriceQuantitySumHigh;
+            this.basePriceQuantitySum = basePriceQuantitySum;
+            this.baseQuantitySum = baseQuantitySum;
+        }
+
+        /**
+         * Write trade into slot. Cumulative sums are calculated from the previous slot
+         */
+        void set(int slot, long sequence, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                 int dividend) {
+            this.sequences[slot] = sequence;
+            this.dateTimes[slot] = dateTime;
+            this.quantities[slot] = quantity;
+            this.totalPrices[slot] = totalPrice;
+            this.dividends[slot] = dividend;
+            this.tradeTypes[slot] = (byte)tradeType.ordinal();
+            long priceQuantity = (long)totalPrice * quantity;
+            long low = this.priceQuantitySumBefore(slot) + priceQuantity;
+            this.priceQuantitySums[slot] = low;
+            this.priceQuantitySumsHigh[slot] = this.priceQuantitySumHighBefore(slot) +
+                                               PriceArithmetic.carry(low, priceQuantity);
+            this.quantitySums[slot] = this.quantitySumBefore(slot) + quantity;
+        }
+
+        /**
+         * Create trade from stored values
+         */
+        Trade getTrade(int slot) {
+            Trade trade = new Trade(TRADE_TYPES[this.tradeTypes[slot]], this.dateTimes[slot], this.quantities[slot],
+                                    this.totalPrices[slot], this.dividends[slot]);
+            trade.setSequence(this.sequences[slot]);
+            return trade;
+        }
+
+        /**
+         * Low word of sum of price * quantity of all trades before given slot
+         */
+        long priceQuantitySumBefore(int slot) {
+            return slot == 0 ? this.basePriceQuantitySum : this.priceQuantitySums[slot - 1];
+        }
+
+        /**
+         * High word of sum of price * quantity of all trades before given slot
+         */
+        long priceQuantitySumHighBefore(int slot) {
+            return slot == 0 ? this.basePriceQuantitySumHigh : this.priceQuantitySumsHigh[slot - 1];
+        }
+
+        /**
+         * Sum of quantity of all trades before given slot
+         */
+        long quantitySumBefore(int slot) {
+            return slot == 0 ? this.baseQuantitySum : this.quantitySums[slot - 1];
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeStatus;
+import com.jpmorgan.test.pojo.TradeType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking server that adds trades received over TCP or Unix domain socket to the trades manager.<br/>
+ * Clients send stream of {@link TradesCodec} records in big endian order. Stock record adds or updates the stock
+ * and binds id given by the client to it, following trades of the connection refer to the stock by that id. Trade
+ * without time is stamped when it is added.<br/>
+ * All connections are served by single selector thread. Records are decoded directly from per connection buffer
+ * to {@link TradesManager#tryAddTrade(int, TradeType, long, int, int, int)}, so steady stream of trades doesn't
+ * allocate. Server doesn't respond - rejected records are only counted. Connection that sends unknown record type
+ * is closed.
+ */
+public class TradesServer {
+    /** Size of receive buffer of each connection */
+    static final int BUFFER_SIZE = 1024 * TradesCodec.RECORD_SIZE;
+    /** Max stock id that client can use */
+    static final int MAX_CLIENT_STOCK_ID = 1 << 20;
+
+    /** Trades manager that receives trades */
+    private final TradesManager tradesManager;
+    /** Number of added trades */
+    private final AtomicLong acceptedTradesCount;
+    /** Number of rejected trades and stocks */
+    private final AtomicLong rejectedRecordsCount;
+    /** Server channel. <code>null</code> if not started */
+    private ServerSocketChannel serverChannel;
+    /** Selector of all channels */
+    private Selector selector;
+    /** Selector thread */
+    private Thread selectorThread;
+    /** Cleared when selector thread should stop */
+    private volatile boolean running;
+
+    /**
+     * Construct stopped server
+     *
+     * @param tradesManager Trades manager that receives trades. Cannot be <code>null</code>
+     */
+    public TradesServer(TradesManager tradesManager) {
+        super();
+
+        if (tradesManager == null) {
+            throw new RuntimeException("Trades manager cannot be null");
+        }
+
+        this.tradesManager = tradesManager;
+        this.acceptedTradesCount = new AtomicLong();
+        this.rejectedRecordsCount = new AtomicLong();
+    }
+
+    /**
+     * Bind the server and start selector thread. Unix domain socket address is supported only by runtime that
+     * supports such channels, its file is not deleted when the server is stopped.
+     *
+     * @param address Local address. Port 0 of {@link InetSocketAddress} binds any free port
+     * @throws IOException If the address cannot be bound
+     */
+    public synchronized void start(SocketAddress address) throws IOException {
+        if (this.serverChannel != null) {
+            throw new RuntimeException("Server is already started");
+        }
+
+        ServerSocketChannel serverChannel = openServerChannel(address);
+        final Selector selector;
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            selector = Selector.open();
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            throw e;
+        }
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.serverChannel = serverChannel;
+        this.selector = selector;
+        this.running = true;
+        this.selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select(selector);
+            }
+        }, "trades-server");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Stop selector thread and close all connections. Records that are received but not decoded yet are dropped.
+     */
+    public synchronized void stop() {
+        if (this.serverChannel == null) {
+            return;
+        }
+
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            this.selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.serverChannel = null;
+            this.selector = null;
+            this.selectorThread = null;
+        }
+    }
+
+    /**
+     * @return Bound address, <code>null</code> if the server is not started
+     * @throws IOException If the address cannot be read
+     */
+    public synchronized SocketAddress getLocalAddress() throws IOException {
+        return this.serverChannel == null ? null : this.serverChannel.getLocalAddress();
+    }
+
+    /**
+     * @return Number of added trades
+     */
+    public long getAcceptedTradesCount() {
+        return this.acceptedTradesCount.get();
+    }
+
+    /**
+     * @return Number of rejected trades and stocks
+     */
+    public long getRejectedRecordsCount() {
+        return this.rejectedRecordsCount.get();
+    }
+
+    /**
+     * Serve all channels until the server is stopped. All channels and the selector are closed on exit
+     */
+    private void select(Selector selector) {
+        try {
+            while (this.running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        this.accept((ServerSocketChannel)key.channel(), selector);
+                    } else if (key.isReadable()) {
+                        this.read(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Trades server failed", e);
+        } finally {
+            for (SelectionKey key: selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Accept new connection
+     */
+    private void accept(ServerSocketChannel serverChannel, Selector selector) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(this.tradesManager));
+    }
+
+    /**
+     * Read available bytes of the connection and add all complete records
+     */
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel)key.channel();
+        Connection connection = (Connection)key.attachment();
+        ByteBuffer buffer = connection.buffer;
+        try {
+            if (channel.read(buffer) < 0) {
+                closeQuietly(channel);
+                return;
+            }
+        } catch (IOException e) {
+            closeQuietly(channel);
+            return;
+        }
+
+        buffer.flip();
+        try {
+            TradesCodec.decode(buffer, connection);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+        } finally {
+            buffer.compact();
+            // counters are shared by all connections, so they are updated once per read
+            this.acceptedTradesCount.addAndGet(connection.acceptedTrades);
+            this.rejectedRecordsCount.addAndGet(connection.rejectedRecords);
+            connection.acceptedTrades = 0;
+            connection.rejectedRecords = 0;
+        }
+    }
+
+    /**
+     * Open server channel of given address family
+     */
+    private static ServerSocketChannel openServerChannel(SocketAddress address) throws IOException {
+        if (address instanceof InetSocketAddress) {
+            return ServerSocketChannel.open();
+        }
+
+        // Unix domain sockets are opened by reflection, so the server runs also on runtime without them
+        try {
+            Method open = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+            return (ServerSocketChannel)open.invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (Exception e) {
+            throw new IOException("Address is not supported: " + address, e);
+        }
+    }
+
+    /**
+     * Close channel or selector without failing
+     */
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing to do with channel that cannot be closed
+        }
+    }
+
+    /**
+     * State of single client connection. Used only by selector thread
+     */
+    private static final class Connection implements TradesCodecListener {
+        /** Trades manager that receives trades */
+        private final TradesManager tradesManager;
+        /** Received bytes that are not decoded yet */
+        private final ByteBuffer buffer;
+        /** Trades manager stock id by client stock id, -1 if not bound */
+        private int[] stockIds;
+        /** Number of trades added since last read */
+        private long acceptedTrades;
+        /** Number of records rejected since last read */
+        private long rejectedRecords;
+
+        Connection(TradesManager tradesManager) {
+            this.tradesManager = tradesManager;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.stockIds = new int[64];
+            Arrays.fill(this.stockIds, -1);
+        }
+
+        @Override
+        public void onTrade(int stockId, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                            int dividend) {
+            int managerStockId = stockId >= 0 && stockId < this.stockIds.length ? this.stockIds[stockId] : -1;
+            TradeStatus status;
+            if (dateTime == 0) {
+                status = this.tradesManager.tryAddTrade(managerStockId, tradeType, quantity, totalPrice, dividend);
+            } else {
+                status = this.tradesManager.tryAddTrade(managerStockId, tradeType, dateTime, quantity, totalPrice,
+                                                        dividend);
+            }
+
+            if (status == TradeStatus.Accepted) {
+                this.acceptedTrades++;
+            } else {
+                this.rejectedRecords++;
+            }
+        }
+
+        @Override
+        public void onStock(int stockId, String stockSymbol, StockType stockType, int parValue,
+                            int fixedDividend) {
+            if (stockId < 0 || stockId >= MAX_CLIENT_STOCK_ID) {
+                this.rejectedRecords++;
+                return;
+            }
+
+            int managerStockId;
+            try {
+                managerStockId = this.tradesManager.addOrUpdateStock(stockSymbol, stockType, parValue,
+                                                                     fixedDividend);
+            } catch (RuntimeException e) {
+                this.rejectedRecords++;
+                return;
+            }
+
+            if (stockId >= this.stockIds.length) {
+                int length = this.stockIds.length;
+                this.stockIds = Arrays.copyOf(this.stockIds, Math.max(stockId + 1, length * 2));
+                Arrays.fill(this.stockIds, length, this.stockIds.length, -1);
+            }
+            this.stockIds[stockId] = managerStockId;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Trade;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable view of trades of single stock in a time frame.<br/>
+ * Snapshot is reading the same columns as trades manager - trades are not copied. Columns are frozen when
+ * snapshot is taken, so concurrent writers never change trades of the snapshot and it can be read
+ * by any thread without locking.
+ */
+public final class TradesSnapshot implements Iterable<Trade> {
+    /** Frozen columns */
+    private final TradesRingBuffer.Columns columns;
+    /** First slot of the snapshot */
+    private final int fromSlot;
+    /** End slot of the snapshot (exclusive) */
+    private final int toSlot;
+
+    /**
+     * Construct snapshot of given slots
+     *
+     * @param columns Frozen columns
+     * @param fromSlot First slot of the snapshot
+     * @param toSlot End slot of the snapshot (exclusive)
+     */
+    TradesSnapshot(TradesRingBuffer.Columns columns, int fromSlot, int toSlot) {
+        super();
+
+        this.columns = columns;
+        this.fromSlot = fromSlot;
+        this.toSlot = toSlot;
+    }
+
+    /**
+     * @return Number of trades in the snapshot
+     */
+    public int getTradesCount() {
+        return this.toSlot - this.fromSlot;
+    }
+
+    /**
+     * @return Sum of quantity of all trades
+     */
+    public long getVolume() {
+        return this.columns.quantitySumBefore(this.toSlot) - this.columns.quantitySumBefore(this.fromSlot);
+    }
+
+    /**
+     * @return Sum of price * quantity of all trades
+     * @throws ArithmeticException if the sum doesn't fit in <code>long</code>
+     */
+    public long getPriceQuantitySum() {
+        long low = this.getPriceQuantitySumLow();
+        if (this.getPriceQuantitySumHigh() != 0 || low < 0) {
+            throw new ArithmeticException("long overflow");
+        }
+        return low;
+    }
+
+    /**
+     * @return Stock price in pennies calculated from all trades of the snapshot, rounded half up. Zero if
+     * the snapshot is empty
+     */
+    public int getStockPrice() {
+        long low = this.getPriceQuantitySumLow();
+        return PriceArithmetic.averagePrice(this.getPriceQuantitySumHigh(), low, this.getVolume());
+    }
+
+    /**
+     * Low word of sum of price * quantity
+     */
+    private long getPriceQuantitySumLow() {
+        return this.columns.priceQuantitySumBefore(this.toSlot) - this.columns.priceQuantitySumBefore(this.fromSlot);
+    }
+
+    /**
+     * High word of sum of price * quantity
+     */
+    private long getPriceQuantitySumHigh() {
+        return this.columns.priceQuantitySumHighBefore(this.toSlot) -
+               this.columns.priceQuantitySumHighBefore(this.fromSlot) -
+               PriceArithmetic.borrow(this.columns.priceQuantitySumBefore(this.toSlot),
+                                      this.columns.priceQuantitySumBefore(this.fromSlot));
+    }
+
+    /**
+     * Get single trade
+     *
+     * @param index Index of the trade, 0 is the oldest one
+     * @return New trade object
+     */
+    public Trade getTrade(int index) {
+        if (index < 0 || index >= this.getTradesCount()) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+
+        return this.columns.getTrade(this.fromSlot + index);
+    }
+
+    /**
+     * @return Iterator over all trades from the oldest one. Trade objects are created on demand
+     */
+    @Override
+    public Iterator<Trade> iterator() {
+        return new Iterator<Trade>() {
+            private int slot = fromSlot;
+
+            @Override
+            public boolean hasNext() {
+                return this.slot < toSlot;
+            }
+
+            @Override
+            public Trade next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return columns.getTrade(this.slot++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
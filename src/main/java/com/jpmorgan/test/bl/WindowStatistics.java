@@ -0,0 +1,48 @@
+package com.jpmorgan.test.bl;
+
+/**
+ * Mutable holder of sums over all trades in a time frame. Filled by single consistent read of trades buffer
+ * and reusable between reads.
+ */
+final class WindowStatistics {
+    /** Sum of price * quantity, high word */
+    private long priceQuantitySumHigh;
+    /** Sum of price * quantity, low word */
+    private long priceQuantitySumLow;
+    /** Sum of quantity */
+    private long quantitySum;
+    /** Number of trades */
+    private int tradesCount;
+
+    /**
+     * Set all values
+     */
+    void set(long priceQuantitySumHigh, long priceQuantitySumLow, long quantitySum, int tradesCount) {
+        this.priceQuantitySumHigh = priceQuantitySumHigh;
+        this.priceQuantitySumLow = priceQuantitySumLow;
+        this.quantitySum = quantitySum;
+        this.tradesCount = tradesCount;
+    }
+
+    /**
+     * @return Sum of quantity
+     */
+    long getQuantitySum() {
+        return this.quantitySum;
+    }
+
+    /**
+     * @return Number of trades
+     */
+    int getTradesCount() {
+        return this.tradesCount;
+    }
+
+    /**
+     * @return Average price weighted by quantity in pennies, {@link PriceArithmetic#EMPTY_PRICE} if there
+     * are no trades
+     */
+    int getStockPrice() {
+        return PriceArithmetic.averagePrice(this.priceQuantitySumHigh, this.priceQuantitySumLow, this.quantitySum);
+    }
+}
@@ -0,0 +1,118 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing open, high, low, close and volume of trades of single {@link Stock stock}
+ * in one candle interval. Prices are in pennies.
+ */
+public class Candle {
+    /** Start of the interval */
+    private long startDateTime;
+    /** End of the interval (exclusive) */
+    private long endDateTime;
+    /** Price of the first trade */
+    private int openPrice;
+    /** Highest price */
+    private int highPrice;
+    /** Lowest price */
+    private int lowPrice;
+    /** Price of the last trade */
+    private int closePrice;
+    /** Sum of quantity */
+    private long volume;
+    /** Number of trades */
+    private int tradesCount;
+    /** Average price weighted by quantity */
+    private int stockPrice;
+    /** <code>false</code> if the interval is not finished yet */
+    private boolean closed;
+
+    /**
+     * Default constructor
+     */
+    public Candle() {
+        super();
+    }
+
+    public long getStartDateTime() {
+        return startDateTime;
+    }
+
+    public void setStartDateTime(long startDateTime) {
+        this.startDateTime = startDateTime;
+    }
+
+    public long getEndDateTime() {
+        return endDateTime;
+    }
+
+    public void setEndDateTime(long endDateTime) {
+        this.endDateTime = endDateTime;
+    }
+
+    public int getOpenPrice() {
+        return openPrice;
+    }
+
+    public void setOpenPrice(int openPrice) {
+        this.openPrice = openPrice;
+    }
+
+    public int getHighPrice() {
+        return highPrice;
+    }
+
+    public void setHighPrice(int highPrice) {
+        this.highPrice = highPrice;
+    }
+
+    public int getLowPrice() {
+        return lowPrice;
+    }
+
+    public void setLowPrice(int lowPrice) {
+        this.lowPrice = lowPrice;
+    }
+
+    public int getClosePrice() {
+        return closePrice;
+    }
+
+    public void setClosePrice(int closePrice) {
+        this.closePrice = closePrice;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public void setVolume(long volume) {
+        this.volume = volume;
+    }
+
+    public int getTradesCount() {
+        return tradesCount;
+    }
+
+    public void setTradesCount(int tradesCount) {
+        this.tradesCount = tradesCount;
+    }
+
+    public int getStockPrice() {
+        return stockPrice;
+    }
+
+    public void setStockPrice(int stockPrice) {
+        this.stockPrice = stockPrice;
+    }
+
+    /**
+     * @return <code>true</code> if the interval is finished and candle doesn't change anymore (except for late trades)
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed(boolean closed) {
+        this.closed = closed;
+    }
+}
@@ -0,0 +1,85 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing distribution of latencies of single operation. Percentiles are upper bounds
+ * of histogram buckets, so they are overestimated by at most few percent.
+ */
+public class LatencySnapshot {
+    /** Number of recorded calls */
+    private long count;
+    /** Average latency in nanos */
+    private double meanNanos;
+    /** Median latency in nanos */
+    private long p50Nanos;
+    /** 90th percentile in nanos */
+    private long p90Nanos;
+    /** 99th percentile in nanos */
+    private long p99Nanos;
+    /** 99.9th percentile in nanos */
+    private long p999Nanos;
+    /** Max latency in nanos */
+    private long maxNanos;
+
+    /**
+     * Default constructor
+     */
+    public LatencySnapshot() {
+        super();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    public void setMeanNanos(double meanNanos) {
+        this.meanNanos = meanNanos;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public void setP50Nanos(long p50Nanos) {
+        this.p50Nanos = p50Nanos;
+    }
+
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    public void setP90Nanos(long p90Nanos) {
+        this.p90Nanos = p90Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public void setP99Nanos(long p99Nanos) {
+        this.p99Nanos = p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public void setP999Nanos(long p999Nanos) {
+        this.p999Nanos = p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public void setMaxNanos(long maxNanos) {
+        this.maxNanos = maxNanos;
+    }
+}
@@ -0,0 +1,75 @@
+package com.jpmorgan.test.pojo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Pojo that representing analytics of all {@link Stock stocks} calculated in single pass.
+ */
+public class MarketAnalytics {
+    /** Time for which analytics are calculated */
+    private long calculationTime;
+    /** Analytics of all stocks by symbol */
+    private Map<String, StockAnalytics> stockAnalyticsMap;
+    /** GBCE All Share Index calculated from the same stock prices */
+    private double allSharesIndex;
+
+    /**
+     * Default constructor
+     */
+    public MarketAnalytics() {
+        super();
+    }
+
+    /**
+     * Construct market analytics with all information needed
+     *
+     * @param calculationTime Time for which analytics are calculated
+     * @param stockAnalyticsMap Analytics of all stocks by symbol
+     * @param allSharesIndex GBCE All Share Index
+     */
+    public MarketAnalytics(long calculationTime, Map<String, StockAnalytics> stockAnalyticsMap, double allSharesIndex) {
+        super();
+
+        this.calculationTime = calculationTime;
+        this.stockAnalyticsMap = stockAnalyticsMap;
+        this.allSharesIndex = allSharesIndex;
+    }
+
+    public long getCalculationTime() {
+        return calculationTime;
+    }
+
+    public void setCalculationTime(long calculationTime) {
+        this.calculationTime = calculationTime;
+    }
+
+    /**
+     * Get analytics of single stock
+     * @param stockSymbol Symbol of the stock
+     * @return Analytics or <code>null</code> if stock was not present
+     */
+    public StockAnalytics getStockAnalytics(String stockSymbol) {
+        return this.stockAnalyticsMap.get(stockSymbol);
+    }
+
+    /**
+     * @return Analytics of all stocks
+     */
+    public Collection<StockAnalytics> getAllStockAnalytics() {
+        return Collections.unmodifiableCollection(this.stockAnalyticsMap.values());
+    }
+
+    public void setStockAnalyticsMap(Map<String, StockAnalytics> stockAnalyticsMap) {
+        this.stockAnalyticsMap = stockAnalyticsMap;
+    }
+
+    public double getAllSharesIndex() {
+        return allSharesIndex;
+    }
+
+    public void setAllSharesIndex(double allSharesIndex) {
+        this.allSharesIndex = allSharesIndex;
+    }
+}
@@ -0,0 +1,77 @@
+package com.jpmorgan.test.pojo;
+
+import java.util.Map;
+
+/**
+ * Pojo that representing metrics of trades manager taken at single time.<br/>
+ * Counters and latencies are recorded only while metrics are enabled, gauges are read when snapshot is taken.
+ */
+public class MetricsSnapshot {
+    /** Time when snapshot is taken */
+    private long snapshotTime;
+    /** Number of accepted trades */
+    private long acceptedTradesCount;
+    /** Number of rejected trades */
+    private long rejectedTradesCount;
+    /** Number of trades that are currently kept for all stocks */
+    private long retainedTradesCount;
+    /** Metrics of all stocks by symbol */
+    private Map<String, StockMetrics> stockMetrics;
+    /** Latencies by operation name */
+    private Map<String, LatencySnapshot> latencies;
+
+    /**
+     * Default constructor
+     */
+    public MetricsSnapshot() {
+        super();
+    }
+
+    public long getSnapshotTime() {
+        return snapshotTime;
+    }
+
+    public void setSnapshotTime(long snapshotTime) {
+        this.snapshotTime = snapshotTime;
+    }
+
+    public long getAcceptedTradesCount() {
+        return acceptedTradesCount;
+    }
+
+    public void setAcceptedTradesCount(long acceptedTradesCount) {
+        this.acceptedTradesCount = acceptedTradesCount;
+    }
+
+    public long getRejectedTradesCount() {
+        return rejectedTradesCount;
+    }
+
+    public void setRejectedTradesCount(long rejectedTradesCount) {
+        this.rejectedTradesCount = rejectedTradesCount;
+    }
+
+    public long getRetainedTradesCount() {
+        return retainedTradesCount;
+    }
+
+    public void setRetainedTradesCount(long retainedTradesCount) {
+        this.retainedTradesCount = retainedTradesCount;
+    }
+
+    public Map<String, StockMetrics> getStockMetrics() {
+        return stockMetrics;
+    }
+
+    public void setStockMetrics(Map<String, StockMetrics> stockMetrics) {
+        this.stockMetrics = stockMetrics;
+    }
+
+    public Map<String, LatencySnapshot> getLatencies() {
+        return latencies;
+    }
+
+    public void setLatencies(Map<String, LatencySnapshot> latencies) {
+        this.latencies = latencies;
+    }
+}
@@ -0,0 +1,93 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing calculated analytics of single {@link Stock stock}.
+ */
+public class StockAnalytics {
+    /** Symbol of the stock */
+    private String stockSymbol;
+    /** Stock price in pennies */
+    private int stockPrice;
+    /** Dividend yield */
+    private float dividendYield;
+    /** P/E Ratio */
+    private float peRatio;
+    /** Last recorded trade */
+    private Trade lastTrade;
+    /** Sum of quantity of all trades in calculation interval */
+    private long volume;
+    /** Number of trades in calculation interval */
+    private int tradesCount;
+
+    /**
+     * Default constructor
+     */
+    public StockAnalytics() {
+        super();
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public void setStockSymbol(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public int getStockPrice() {
+        return stockPrice;
+    }
+
+    public void setStockPrice(int stockPrice) {
+        this.stockPrice = stockPrice;
+    }
+
+    /**
+     * @return Dividend yield. <code>NaN</code> for stock without trades in calculation interval
+     */
+    public float getDividendYield() {
+        return dividendYield;
+    }
+
+    public void setDividendYield(float dividendYield) {
+        this.dividendYield = dividendYield;
+    }
+
+    /**
+     * @return P/E Ratio. <code>NaN</code> for stock without trades
+     */
+    public float getPeRatio() {
+        return peRatio;
+    }
+
+    public void setPeRatio(float peRatio) {
+        this.peRatio = peRatio;
+    }
+
+    /**
+     * @return Last recorded trade. <code>null</code> for stock without trades
+     */
+    public Trade getLastTrade() {
+        return lastTrade;
+    }
+
+    public void setLastTrade(Trade lastTrade) {
+        this.lastTrade = lastTrade;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public void setVolume(long volume) {
+        this.volume = volume;
+    }
+
+    public int getTradesCount() {
+        return tradesCount;
+    }
+
+    public void setTradesCount(int tradesCount) {
+        this.tradesCount = tradesCount;
+    }
+}
@@ -0,0 +1,84 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing ingestion metrics of single {@link Stock stock}
+ */
+public class StockMetrics {
+    /** Symbol of the stock */
+    private String stockSymbol;
+    /** Number of all added trades */
+    private long tradesCount;
+    /** Number of trades that are currently kept */
+    private int retainedTradesCount;
+    /** Number of trades in calculation interval */
+    private int windowTradesCount;
+    /** Number of trades that are evicted */
+    private long evictedTradesCount;
+    /** Number of writer lock acquisitions that had to wait */
+    private long contendedWritesCount;
+    /** Time spent waiting for writer lock in nanos */
+    private long writerLockWaitNanos;
+
+    /**
+     * Default constructor
+     */
+    public StockMetrics() {
+        super();
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public void setStockSymbol(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public long getTradesCount() {
+        return tradesCount;
+    }
+
+    public void setTradesCount(long tradesCount) {
+        this.tradesCount = tradesCount;
+    }
+
+    public int getRetainedTradesCount() {
+        return retainedTradesCount;
+    }
+
+    public void setRetainedTradesCount(int retainedTradesCount) {
+        this.retainedTradesCount = retainedTradesCount;
+    }
+
+    public int getWindowTradesCount() {
+        return windowTradesCount;
+    }
+
+    public void setWindowTradesCount(int windowTradesCount) {
+        this.windowTradesCount = windowTradesCount;
+    }
+
+    public long getEvictedTradesCount() {
+        return evictedTradesCount;
+    }
+
+    public void setEvictedTradesCount(long evictedTradesCount) {
+        this.evictedTradesCount = evictedTradesCount;
+    }
+
+    public long getContendedWritesCount() {
+        return contendedWritesCount;
+    }
+
+    public void setContendedWritesCount(long contendedWritesCount) {
+        this.contendedWritesCount = contendedWritesCount;
+    }
+
+    public long getWriterLockWaitNanos() {
+        return writerLockWaitNanos;
+    }
+
+    public void setWriterLockWaitNanos(long writerLockWaitNanos) {
+        this.writerLockWaitNanos = writerLockWaitNanos;
+    }
+}
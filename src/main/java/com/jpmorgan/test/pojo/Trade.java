@@ -19,6 +19,8 @@ public class Trade {
     private int totalPrice;
     /** Dividend for the trade */
     private int dividend;
+    /** Sequence number of the trade within its stock. Assigned when trade is added */
+    private long sequence;
 
     /**
      * Default constructor
@@ -38,6 +40,19 @@ public class Trade {
     public Trade(TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
         super();
 
+        this.set(tradeType, dateTime, quantity, totalPrice, dividend);
+    }
+
+    /**
+     * Set all information of the trade, so single instance can be reused as holder
+     *
+     * @param tradeType Type of trade
+     * @param dateTime When trade happened
+     * @param quantity How many Stocks are sale
+     * @param totalPrice Total price of the deal
+     * @param dividend Dividend for the trade
+     */
+    public void set(TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
         this.tradeType = tradeType;
         this.dateTime = dateTime;
         this.quantity = quantity;
@@ -95,28 +110,51 @@ public class Trade {
         this.dividend = dividend;
     }
 
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
     /**
      * Validates all values of the trade
      * @return <code>true</code> if Trade is valid, <code>false</code> otherwise
      */
     public boolean validate() {
-        if (this.getTradeType() == null) {
+        return validate(this.getTradeType(), this.getDateTime(), this.getQuantity(), this.getTotalPrice(),
+                        this.getDividend());
+    }
+
+    /**
+     * Validates trade values without constructing the trade
+     *
+     * @param tradeType Type of trade
+     * @param dateTime When trade happened
+     * @param quantity How many Stocks are sale
+     * @param totalPrice Total price of the deal
+     * @param dividend Dividend for the trade
+     * @return <code>true</code> if values are valid, <code>false</code> otherwise
+     */
+    public static boolean validate(TradeType tradeType, long dateTime, int quantity, int totalPrice, int dividend) {
+        if (tradeType == null) {
             return false;
         }
 
-        if (this.getDateTime() == 0) {
+        if (dateTime == 0) {
             return false;
         }
 
-        if (this.getDividend() <= 0) {
+        if (dividend <= 0) {
             return false;
         }
 
-        if (this.getQuantity() <= 0) {
+        if (quantity <= 0) {
             return false;
         }
 
-        if (this.getTotalPrice() <= 0) {
+        if (totalPrice <= 0) {
             return false;
         }
 
@@ -131,8 +169,19 @@ public class Trade {
 
         Trade trade = (Trade)o;
         return this.getDateTime() == trade.getDateTime() &&
+               this.getSequence() == trade.getSequence() &&
                this.getQuantity() == trade.getQuantity() &&
                this.getTotalPrice() == trade.getTotalPrice() &&
                this.getTradeType().equals(trade.getTradeType());
     }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(this.getDateTime());
+        result = 31 * result + Long.hashCode(this.getSequence());
+        result = 31 * result + this.getQuantity();
+        result = 31 * result + this.getTotalPrice();
+        result = 31 * result + (this.getTradeType() == null ? 0 : this.getTradeType().hashCode());
+        return result;
+    }
 }
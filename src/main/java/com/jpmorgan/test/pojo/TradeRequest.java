@@ -0,0 +1,84 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing single trade of given {@link Stock stock} that is requested to be added.
+ * Time of the trade is assigned when it is added.
+ */
+public class TradeRequest {
+    /** Symbol of the traded stock */
+    private String stockSymbol;
+    /** Type of the Trade */
+    private TradeType tradeType;
+    /** Quantity of shares subject of the Trade */
+    private int quantity;
+    /** Total price of the trade */
+    private int totalPrice;
+    /** Dividend for the trade */
+    private int dividend;
+
+    /**
+     * Default constructor
+     */
+    public TradeRequest() {
+        super();
+    }
+
+    /**
+     * Construct a trade request with all information needed
+     *
+     * @param stockSymbol Symbol of the traded stock
+     * @param tradeType Type of trade
+     * @param quantity How many Stocks are sale
+     * @param totalPrice Total price of the deal
+     * @param dividend Dividend for the trade
+     */
+    public TradeRequest(String stockSymbol, TradeType tradeType, int quantity, int totalPrice, int dividend) {
+        super();
+
+        this.stockSymbol = stockSymbol;
+        this.tradeType = tradeType;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.dividend = dividend;
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public void setStockSymbol(String stockSymbol) {
+        this.stockSymbol = stockSymbol;
+    }
+
+    public TradeType getTradeType() {
+        return tradeType;
+    }
+
+    public void setTradeType(TradeType tradeType) {
+        this.tradeType = tradeType;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public int getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(int totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    public int getDividend() {
+        return dividend;
+    }
+
+    public void setDividend(int dividend) {
+        this.dividend = dividend;
+    }
+}
@@ -0,0 +1,13 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Result of adding single trade in batch
+ */
+public enum TradeStatus {
+    /** Trade is added */
+    Accepted,
+    /** Some of the trade values is not valid */
+    InvalidArguments,
+    /** Stock of the trade is not found */
+    StockNotInitialized
+}
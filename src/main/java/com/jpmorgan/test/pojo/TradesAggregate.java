@@ -0,0 +1,128 @@
+package com.jpmorgan.test.pojo;
+
+/**
+ * Pojo that representing aggregated trades of single {@link Stock stock} in a time window.<br/>
+ * Prices are in pennies. All prices are zero if there are no trades in the window.
+ */
+public class TradesAggregate {
+    /** Start of the window, rounded down to aggregation bucket */
+    private long fromDateTime;
+    /** End of the window */
+    private long toDateTime;
+    /** Sum of price * quantity, low 64 bits */
+    private long priceQuantitySum;
+    /** Sum of price * quantity, high 64 bits. Zero unless the sum doesn't fit in <code>long</code> */
+    private long priceQuantitySumHigh;
+    /** Sum of quantity */
+    private long volume;
+    /** Number of trades */
+    private int tradesCount;
+    /** Price of the first trade */
+    private int openPrice;
+    /** Highest price */
+    private int highPrice;
+    /** Lowest price */
+    private int lowPrice;
+    /** Price of the last trade */
+    private int closePrice;
+    /** Average price weighted by quantity */
+    private int stockPrice;
+
+    /**
+     * Default constructor
+     */
+    public TradesAggregate() {
+        super();
+    }
+
+    public long getFromDateTime() {
+        return fromDateTime;
+    }
+
+    public void setFromDateTime(long fromDateTime) {
+        this.fromDateTime = fromDateTime;
+    }
+
+    public long getToDateTime() {
+        return toDateTime;
+    }
+
+    public void setToDateTime(long toDateTime) {
+        this.toDateTime = toDateTime;
+    }
+
+    public long getPriceQuantitySum() {
+        return priceQuantitySum;
+    }
+
+    public void setPriceQuantitySum(long priceQuantitySum) {
+        this.priceQuantitySum = priceQuantitySum;
+    }
+
+    public long getPriceQuantitySumHigh() {
+        return priceQuantitySumHigh;
+    }
+
+    public void setPriceQuantitySumHigh(long priceQuantitySumHigh) {
+        this.priceQuantitySumHigh = priceQuantitySumHigh;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public void setVolume(long volume) {
+        this.volume = volume;
+    }
+
+    public int getTradesCount() {
+        return tradesCount;
+    }
+
+    public void setTradesCount(int tradesCount) {
+        this.tradesCount = tradesCount;
+    }
+
+    public int getOpenPrice() {
+        return openPrice;
+    }
+
+    public void setOpenPrice(int openPrice) {
+        this.openPrice = openPrice;
+    }
+
+    public int getHighPrice() {
+        return highPrice;
+    }
+
+    public void setHighPrice(int highPrice) {
+        this.highPrice = highPrice;
+    }
+
+    public int getLowPrice() {
+        return lowPrice;
+    }
+
+    public void setLowPrice(int lowPrice) {
+        this.lowPrice = lowPrice;
+    }
+
+    public int getClosePrice() {
+        return closePrice;
+    }
+
+    public void setClosePrice(int closePrice) {
+        this.closePrice = closePrice;
+    }
+
+    /**
+     * @return Average price weighted by quantity in pennies, rounded half up. Zero if there are no trades
+     */
+    public int getStockPrice() {
+        return stockPrice;
+    }
+
+    public void setStockPrice(int stockPrice) {
+        this.stockPrice = stockPrice;
+    }
+}
@@ -0,0 +1,45 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for AllSharesIndex.
+ */
+public class AllSharesIndexTest {
+    private AllSharesIndex allSharesIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        this.allSharesIndex = new AllSharesIndex();
+    }
+
+    @Test
+    public void testGetValue() throws Exception {
+        assertTrue(Double.isNaN(this.allSharesIndex.getValue(System.currentTimeMillis())));
+
+        StockTradesManager first = new StockTradesManager();
+        StockTradesManager second = new StockTradesManager();
+        AllSharesIndex.Member firstMember = this.allSharesIndex.addMember(first);
+        AllSharesIndex.Member secondMember = this.allSharesIndex.addMember(second);
+        assertTrue(0.0 == this.allSharesIndex.getValue(System.currentTimeMillis()));
+
+        long now = System.currentTimeMillis();
+        first.addTrade(new Trade(TradeType.buy, now - StockTradesManager.CALC_TIME + 1000, 1, 100, 1));
+        first.addTrade(new Trade(TradeType.buy, now, 1, 300, 1));
+        second.addTrade(new Trade(TradeType.buy, now, 1, 800, 1));
+        this.allSharesIndex.markDirty(firstMember);
+        this.allSharesIndex.markDirty(secondMember);
+        assertEquals(400, this.allSharesIndex.getValue(now), 0.0001);
+
+        // the oldest trade leaves calculation interval without new trades
+        assertEquals(Math.sqrt(300 * 800), this.allSharesIndex.getValue(now + 2000), 0.0001);
+
+        // all trades leave calculation interval
+        assertTrue(0.0 == this.allSharesIndex.getValue(now + StockTradesManager.CALC_TIME + 1));
+    }
+}
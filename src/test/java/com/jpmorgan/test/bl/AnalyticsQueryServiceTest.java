@@ -0,0 +1,195 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockAnalytics;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for AnalyticsQueryService.
+ */
+public class AnalyticsQueryServiceTest {
+    private static final long START_TIME = 1000000000L;
+    private BlockingTradesManager tradesManager;
+    private AnalyticsQueryService queryService;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tradesManager = new BlockingTradesManager();
+        this.tradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 1);
+        this.tradesManager.addOrUpdateStock("BCD", StockType.Preferred, 100, 2);
+        this.tradesManager.addTrade("ABC", TradeType.buy, 10, 1000, 5);
+        this.tradesManager.addTrade("BCD", TradeType.sell, 20, 4000, 5);
+        this.queryService = new AnalyticsQueryService(this.tradesManager, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.tradesManager.release.countDown();
+        this.queryService.shutdown();
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        this.tradesManager.release.countDown();
+        assertEquals(this.tradesManager.calculateStockPrice("ABC"),
+                     this.queryService.calculateStockPrice("ABC").get().intValue());
+        assertEquals(this.tradesManager.calculateDividendYield("BCD"),
+                     this.queryService.calculateDividendYield("BCD").get(), 0);
+        assertEquals(this.tradesManager.calculatePERatio("BCD"),
+                     this.queryService.calculatePERatio("BCD").get(), 0);
+        assertEquals(this.tradesManager.getStockAnalytics("ABC").getStockPrice(),
+                     this.queryService.getStockAnalytics("ABC").get().getStockPrice());
+
+        // Negative tests
+        try {
+            this.queryService.calculateStockPrice("NOT").get();
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StockNotInitializedException);
+        }
+        try {
+            this.queryService.calculatePERatio(null).get();
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StockNotInitializedException);
+        }
+        try {
+            new AnalyticsQueryService(this.tradesManager, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testCoalescingAndAdmission() throws Exception {
+        // identical queries share single computation
+        CompletableFuture<Integer> first = this.queryService.calculateStockPrice("ABC");
+        assertTrue(this.tradesManager.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> second = this.queryService.calculateStockPrice("ABC");
+        assertEquals(1, this.queryService.getCoalescedQueriesCount());
+
+        // second computation takes the last permit, third is rejected
+        CompletableFuture<Integer> other = this.queryService.calculateStockPrice("BCD");
+        CompletableFuture<Float> rejected = this.queryService.calculateDividendYield("ABC");
+        try {
+            rejected.get();
+            assertTrue(false);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, this.queryService.getRejectedQueriesCount());
+
+        this.tradesManager.release.countDown();
+        assertEquals(1000, first.get().intValue());
+        assertEquals(1000, second.get().intValue());
+        assertEquals(4000, other.get().intValue());
+        assertEquals(2, this.tradesManager.stockPriceCalls.get());
+
+        // completed computation is not shared anymore
+        assertEquals(1000, this.queryService.calculateStockPrice("ABC").get().intValue());
+        assertEquals(3, this.tradesManager.stockPriceCalls.get());
+        assertEquals(1, this.queryService.getCoalescedQueriesCount());
+    }
+
+    @Test
+    public void testWaitingQueries() throws Exception {
+        AnalyticsQueryService waitingQueryService = new AnalyticsQueryService(this.tradesManager, 1, 1);
+        try {
+            // first computation takes the only permit, next query waits and the last one is rejected
+            CompletableFuture<Integer> first = waitingQueryService.calculateStockPrice("ABC");
+            assertTrue(this.tradesManager.started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> waiting = waitingQueryService.calculateStockPrice("BCD");
+            CompletableFuture<Integer> coalesced = waitingQueryService.calculateStockPrice("BCD");
+            CompletableFuture<Float> rejected = waitingQueryService.calculateDividendYield("ABC");
+            try {
+                rejected.get();
+                assertTrue(false);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertFalse(waiting.isDone());
+            assertEquals(1, waitingQueryService.getCoalescedQueriesCount());
+            assertEquals(1, waitingQueryService.getRejectedQueriesCount());
+
+            // waiting query starts when the permit is released
+            this.tradesManager.release.countDown();
+            assertEquals(1000, first.get().intValue());
+            assertEquals(4000, waiting.get(5, TimeUnit.SECONDS).intValue());
+            assertEquals(4000, coalesced.get().intValue());
+            assertEquals(2, this.tradesManager.stockPriceCalls.get());
+
+            // queue is free again
+            assertEquals(1000, waitingQueryService.calculateStockPrice("ABC").get().intValue());
+        } finally {
+            waitingQueryService.shutdown();
+        }
+
+        // Negative test
+        try {
+            new AnalyticsQueryService(this.tradesManager, 1, -1);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testCoalescedStockAnalytics() throws Exception {
+        CompletableFuture<StockAnalytics> first = this.queryService.getStockAnalytics("ABC");
+        assertTrue(this.tradesManager.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<StockAnalytics> second = this.queryService.getStockAnalytics("ABC");
+        assertEquals(1, this.queryService.getCoalescedQueriesCount());
+
+        // coalesced callers cannot see changes of each other
+        this.tradesManager.release.countDown();
+        assertNotSame(first.get(), second.get());
+        first.get().setStockPrice(0);
+        assertEquals(1000, second.get().getStockPrice());
+    }
+
+    /**
+     * Trades manager that blocks stock price calculation until it is released
+     */
+    private static class BlockingTradesManager extends TradesManager {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger stockPriceCalls = new AtomicInteger();
+
+        BlockingTradesManager() {
+            super(StockTradesManager.CALC_TIME, StockTradesManager.DEFAULT_MAX_TRADES,
+                  new SimulatedTimeSource(START_TIME));
+        }
+
+        @Override
+        public int calculateStockPrice(String stockSymbol) throws StockNotInitializedException {
+            this.stockPriceCalls.incrementAndGet();
+            this.started.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.calculateStockPrice(stockSymbol);
+        }
+
+        @Override
+        public StockAnalytics getStockAnalytics(String stockSymbol) throws StockNotInitializedException {
+            this.started.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getStockAnalytics(stockSymbol);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.LatencySnapshot;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for LatencyHistogram.
+ */
+public class LatencyHistogramTest {
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() throws Exception {
+        this.histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+        // small values are exact
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(i)));
+        }
+
+        // every value is in bucket with relative error below 1/32
+        Random random = new Random();
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >>> (random.nextInt(63) + 1);
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / 32);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        LatencySnapshot snapshot = this.histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99Nanos());
+
+        for (int i = 1; i <= 1000; i++) {
+            this.histogram.record(i * 1000);
+        }
+        this.histogram.record(-1);
+
+        snapshot = this.histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(500000, snapshot.getMeanNanos(), 1000);
+        assertEquals(500000, snapshot.getP50Nanos(), 500000 / 32);
+        assertEquals(990000, snapshot.getP99Nanos(), 990000 / 32);
+        assertEquals(1000000, snapshot.getMaxNanos(), 1000000 / 32);
+    }
+}
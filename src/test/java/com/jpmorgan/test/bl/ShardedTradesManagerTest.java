@@ -0,0 +1,143 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for ShardedTradesManager.
+ */
+public class ShardedTradesManagerTest {
+    private static final int STOCKS_COUNT = 50;
+    private ShardedTradesManager shardedTradesManager;
+    private TradesManager tradesManager;
+
+    @Before
+    public void setUp() throws Exception {
+        this.shardedTradesManager = new ShardedTradesManager(4);
+        this.tradesManager = new TradesManager();
+        for (int i = 0; i < STOCKS_COUNT; i++) {
+            this.shardedTradesManager.addOrUpdateStock("S" + i, StockType.Common, 100, 0);
+            this.tradesManager.addOrUpdateStock("S" + i, StockType.Common, 100, 0);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.shardedTradesManager.shutdown();
+    }
+
+    @Test
+    public void testCalculate() throws Exception {
+        assertTrue(0.0 == this.shardedTradesManager.calculateGBCEAllSharesIndex());
+
+        Random random = new Random();
+        for (int i = 0; i < 10000; i++) {
+            String stockSymbol = "S" + random.nextInt(STOCKS_COUNT);
+            int quantity = random.nextInt(100) + 1;
+            int totalPrice = random.nextInt(1000) + 1;
+            this.shardedTradesManager.addTrade(stockSymbol, TradeType.buy, quantity, totalPrice, 10);
+            this.tradesManager.addTrade(stockSymbol, TradeType.buy, quantity, totalPrice, 10);
+        }
+
+        // queries see all trades added before by the same thread
+        for (int i = 0; i < STOCKS_COUNT; i++) {
+            assertEquals(this.tradesManager.calculateStockPrice("S" + i),
+                         this.shardedTradesManager.calculateStockPrice("S" + i));
+            assertEquals(this.tradesManager.getStockAnalytics("S" + i).getTradesCount(),
+                         this.shardedTradesManager.getStockAnalytics("S" + i).getTradesCount());
+        }
+        assertEquals(this.tradesManager.calculateGBCEAllSharesIndex(),
+                     this.shardedTradesManager.calculateGBCEAllSharesIndex(), 0.0001);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            shardedTradesManager.addTrade("S" + (j % STOCKS_COUNT), TradeType.buy, 1, 100, 10);
+                        }
+                    } catch (StockNotInitializedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer: writers) {
+            writer.join();
+        }
+
+        int tradesCount = 0;
+        for (int i = 0; i < STOCKS_COUNT; i++) {
+            tradesCount += this.shardedTradesManager.getStockAnalytics("S" + i).getTradesCount();
+        }
+        assertEquals(4 * 10000, tradesCount);
+        assertEquals(100, this.shardedTradesManager.calculateGBCEAllSharesIndex(), 0.0001);
+
+        // Negative tests
+        try {
+            this.shardedTradesManager.addTrade("NOT", TradeType.buy, 1, 100, 10);
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        try {
+            this.shardedTradesManager.calculateStockPrice("NOT");
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        try {
+            this.shardedTradesManager.addOrUpdateStock("TST", StockType.Common, 0, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // queries racing with shutdown either return or fail, they never wait forever
+                    try {
+                        while (true) {
+                            shardedTradesManager.calculateStockPrice("S1");
+                            shardedTradesManager.calculateGBCEAllSharesIndex();
+                        }
+                    } catch (StockNotInitializedException e) {
+                        failed.set(true);
+                    } catch (RuntimeException e) {
+                        // shut down
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        Thread.sleep(50);
+        this.shardedTradesManager.shutdown();
+        for (Thread reader: readers) {
+            reader.join(5000);
+            assertFalse(reader.isAlive());
+        }
+        assertFalse(failed.get());
+
+        // Negative tests
+        try {
+            this.shardedTradesManager.addOrUpdateStock("TST", StockType.Common, 100, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+}
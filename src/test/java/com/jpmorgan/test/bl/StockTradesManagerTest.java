@@ -0,0 +1,164 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Candle;
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for StockTradesManager.
+ */
+public class StockTradesManagerTest {
+    private static final long MINUTE = 60 * 1000;
+    private StockTradesManager stockTradesManager;
+
+    @Before
+    public void setUp() throws Exception {
+        this.stockTradesManager = new StockTradesManager();
+    }
+
+    @Test
+    public void testCalculateStockPrice() throws Exception {
+        // empty interval
+        assertEquals(0, this.stockTradesManager.calculateStockPrice());
+
+        long now = System.currentTimeMillis();
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 20 * MINUTE, 10, 10000, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 2 * MINUTE, 2, 100, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.sell, now - MINUTE, 1, 400, 1));
+        assertEquals(200, this.stockTradesManager.calculateStockPrice());
+
+        // running sums are kept between calls
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now, 1, 600, 1));
+        assertEquals(300, this.stockTradesManager.calculateStockPrice());
+    }
+
+    @Test
+    public void testSameMillisecondTrades() throws Exception {
+        long now = System.currentTimeMillis();
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now, 1, 100, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now, 1, 200, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 1, 1, 300, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now, 1, 400, 1));
+
+        assertEquals(4, this.stockTradesManager.getTradesCount());
+        assertEquals(4, this.stockTradesManager.getSequence());
+        assertEquals(250, this.stockTradesManager.calculateStockPrice());
+        assertEquals(4, this.stockTradesManager.getLastTrade().getSequence());
+
+        // ordered by time and sequence number
+        TradesSnapshot snapshot = this.stockTradesManager.getCalcIntervalSnapshot();
+        long[] sequences = {3, 1, 2, 4};
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(sequences[i], snapshot.getTrade(i).getSequence());
+        }
+    }
+
+    @Test
+    public void testEvictTrades() throws Exception {
+        long now = System.currentTimeMillis();
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 30 * MINUTE, 1, 100, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 20 * MINUTE, 1, 100, 1));
+        assertEquals(0, this.stockTradesManager.getTradesCount());
+        assertEquals(2, this.stockTradesManager.getEvictedTradesCount());
+        assertEquals(now - 20 * MINUTE, this.stockTradesManager.getLastTrade().getDateTime());
+
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now, 1, 100, 1));
+        assertEquals(1, this.stockTradesManager.getTradesCount());
+        assertEquals(0, this.stockTradesManager.evictTrades());
+
+        // Negative tests
+        try {
+            new StockTradesManager(MINUTE, 10);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            new StockTradesManager(StockTradesManager.CALC_TIME, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testMaxTrades() throws Exception {
+        this.stockTradesManager = new StockTradesManager(StockTradesManager.CALC_TIME, 2);
+
+        long now = System.currentTimeMillis();
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 3, 1, 100, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 2, 1, 200, 1));
+        this.stockTradesManager.addTrade(new Trade(TradeType.buy, now - 1, 1, 300, 1));
+        assertEquals(2, this.stockTradesManager.getTradesCount());
+        assertEquals(1, this.stockTradesManager.getEvictedTradesCount());
+        assertEquals(250, this.stockTradesManager.calculateStockPrice());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        stockTradesManager.addTrade(new Trade(TradeType.buy, System.currentTimeMillis(), 1, 100, 1));
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer: writers) {
+            writer.join();
+        }
+
+        assertEquals(40000, this.stockTradesManager.getTradesCount());
+        assertEquals(100, this.stockTradesManager.calculateStockPrice());
+    }
+
+    @Test
+    public void testCandles() throws Exception {
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(100 * MINUTE);
+        StockTradesManager simulatedTradesManager = new StockTradesManager(StockTradesManager.CALC_TIME, 1000,
+                                                                           timeSource);
+        simulatedTradesManager.setCandleInterval(MINUTE, 3);
+        assertTrue(simulatedTradesManager.getCandles().isEmpty());
+
+        simulatedTradesManager.addTrade(new Trade(TradeType.buy, 100 * MINUTE, 1, 200, 1));
+        simulatedTradesManager.addTrade(new Trade(TradeType.buy, 100 * MINUTE + 10, 1, 500, 1));
+        simulatedTradesManager.addTrade(new Trade(TradeType.sell, 100 * MINUTE + 20, 2, 100, 1));
+        simulatedTradesManager.addTrade(new Trade(TradeType.buy, 101 * MINUTE, 1, 300, 1));
+        timeSource.advanceTo(101 * MINUTE + 30);
+
+        List<Candle> candles = simulatedTradesManager.getCandles();
+        assertEquals(2, candles.size());
+        Candle candle = candles.get(0);
+        assertEquals(100 * MINUTE, candle.getStartDateTime());
+        assertEquals(101 * MINUTE, candle.getEndDateTime());
+        assertEquals(200, candle.getOpenPrice());
+        assertEquals(500, candle.getHighPrice());
+        assertEquals(100, candle.getLowPrice());
+        assertEquals(100, candle.getClosePrice());
+        assertEquals(4, candle.getVolume());
+        assertEquals(3, candle.getTradesCount());
+        assertEquals(225, candle.getStockPrice());
+        assertTrue(candle.isClosed());
+        assertFalse(candles.get(1).isClosed());
+
+        // interval without trades has no candle, the oldest candle is dropped
+        simulatedTradesManager.addTrade(new Trade(TradeType.buy, 103 * MINUTE, 1, 700, 1));
+        timeSource.advanceTo(103 * MINUTE);
+        candles = simulatedTradesManager.getCandles();
+        assertEquals(2, candles.size());
+        assertEquals(300, candles.get(0).getClosePrice());
+        assertEquals(700, candles.get(1).getClosePrice());
+
+        // Negative test
+        try {
+            simulatedTradesManager.setCandleInterval(0, 3);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+}
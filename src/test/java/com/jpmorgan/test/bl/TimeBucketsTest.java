@@ -0,0 +1,93 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.TradesAggregate;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for TimeBuckets.
+ */
+public class TimeBucketsTest {
+    private static final long START_TIME = 1000000000000L;
+    private TimeBuckets timeBuckets;
+
+    @Before
+    public void setUp() throws Exception {
+        this.timeBuckets = new TimeBuckets();
+    }
+
+    @Test
+    public void testAggregate() throws Exception {
+        TradesAggregate aggregate = new TradesAggregate();
+        this.timeBuckets.aggregate(START_TIME - TimeBuckets.MINUTE, START_TIME, aggregate);
+        assertEquals(0, aggregate.getTradesCount());
+        assertEquals(0, aggregate.getStockPrice());
+        assertEquals(0, aggregate.getHighPrice());
+
+        this.timeBuckets.add(START_TIME, 1, 200);
+        this.timeBuckets.add(START_TIME + 500, 3, 100);
+        this.timeBuckets.add(START_TIME + 1500, 2, 400);
+        // late trade
+        this.timeBuckets.add(START_TIME - 500, 2, 300);
+
+        this.timeBuckets.aggregate(START_TIME - TimeBuckets.MINUTE, START_TIME + 2000, aggregate);
+        assertEquals(4, aggregate.getTradesCount());
+        assertEquals(8, aggregate.getVolume());
+        assertEquals(200 + 300 + 800 + 600, aggregate.getPriceQuantitySum());
+        assertEquals(300, aggregate.getOpenPrice());
+        assertEquals(400, aggregate.getHighPrice());
+        assertEquals(100, aggregate.getLowPrice());
+        assertEquals(400, aggregate.getClosePrice());
+
+        // window start is rounded down to second
+        this.timeBuckets.aggregate(START_TIME + 100, START_TIME + 2000, aggregate);
+        assertEquals(START_TIME, aggregate.getFromDateTime());
+        assertEquals(3, aggregate.getTradesCount());
+        assertEquals(200, aggregate.getOpenPrice());
+        assertEquals(100, aggregate.getLowPrice());
+    }
+
+    @Test
+    public void testWindows() throws Exception {
+        // trade every 100 millis for two hours
+        Random random = new Random();
+        long endTime = START_TIME + 2 * 60 * TimeBuckets.MINUTE;
+        int[] prices = new int[(int)((endTime - START_TIME) / 100)];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = random.nextInt(1000) + 1;
+            this.timeBuckets.add(START_TIME + i * 100, 1, prices[i]);
+        }
+
+        TradesAggregate aggregate = new TradesAggregate();
+        long[] windows = {TimeBuckets.SECOND, TimeBuckets.MINUTE, 5 * TimeBuckets.MINUTE + 1234,
+                          15 * TimeBuckets.MINUTE, TimeBuckets.MAX_WINDOW};
+        long currentTime = endTime + 450;
+        for (long window: windows) {
+            this.timeBuckets.aggregate(currentTime - window, currentTime, aggregate);
+            assertTrue(aggregate.getFromDateTime() <= currentTime - window);
+            assertTrue(aggregate.getFromDateTime() > currentTime - window - TimeBuckets.MINUTE);
+
+            long priceSum = 0;
+            int count = 0;
+            int high = 0;
+            int close = 0;
+            for (int i = 0; i < prices.length; i++) {
+                long dateTime = START_TIME + i * 100;
+                if (dateTime >= aggregate.getFromDateTime() && dateTime <= currentTime) {
+                    priceSum += prices[i];
+                    count++;
+                    high = Math.max(high, prices[i]);
+                    close = prices[i];
+                }
+            }
+            assertEquals(count, aggregate.getTradesCount());
+            assertEquals(priceSum, aggregate.getPriceQuantitySum());
+            assertEquals(high, aggregate.getHighPrice());
+            assertEquals(close, aggregate.getClosePrice());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for TradesJournal.
+ */
+public class TradesJournalTest {
+    private static final long START_TIME = 1000000000L;
+    private File directory;
+    private SimulatedTimeSource timeSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.directory = Files.createTempDirectory("journal").toFile();
+        this.timeSource = new SimulatedTimeSource(START_TIME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file: this.directory.listFiles()) {
+            file.delete();
+        }
+        this.directory.delete();
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        // small segments, so journal is rolled many times
+        TradesManager tradesManager = this.newTradesManager();
+        tradesManager.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        tradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 0);
+        tradesManager.addOrUpdateStock("GIN", StockType.Preferred, 100, 2);
+        for (int i = 0; i < 100; i++) {
+            this.timeSource.advanceBy(1000);
+            tradesManager.addTrade("ABC", TradeType.buy, 1, 1000 + i, 10);
+            tradesManager.addTrade("GIN", TradeType.sell, 2, 2000 + i, 20);
+        }
+        tradesManager.addOrUpdateStock("GIN", StockType.Preferred, 200, 3);
+        tradesManager.closeJournal();
+        assertTrue(this.directory.listFiles().length > 10);
+
+        TradesManager recovered = this.newTradesManager();
+        recovered.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        assertEquals(tradesManager.calculateStockPrice("ABC"), recovered.calculateStockPrice("ABC"));
+        assertEquals(tradesManager.calculateStockPrice("GIN"), recovered.calculateStockPrice("GIN"));
+        assertEquals(200, recovered.getStock("GIN").getParValue());
+        assertEquals(3, recovered.getStock("GIN").getFixedDividend());
+        assertEquals(100, recovered.getStockAnalytics("ABC").getTradesCount());
+
+        // recovered journal is appended
+        recovered.addOrUpdateStock("NEW", StockType.Common, 1, 0);
+        recovered.addTrade("NEW", TradeType.buy, 1, 500, 10);
+        recovered.closeJournal();
+
+        // trades older than retention time are not recovered
+        this.timeSource.advanceBy(StockTradesManager.CALC_TIME - 50 * 1000);
+        TradesManager later = this.newTradesManager();
+        later.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        assertEquals(51, later.getStockAnalytics("ABC").getTradesCount());
+        assertEquals(500, later.calculateStockPrice("NEW"));
+        later.closeJournal();
+    }
+
+    @Test
+    public void testDeleteExpiredSegments() throws Exception {
+        // segments with trades older than retention time are deleted when journal is rolled
+        TradesManager tradesManager = this.newTradesManager();
+        tradesManager.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        tradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 0);
+        for (int i = 0; i < 100; i++) {
+            this.timeSource.advanceBy(60 * 1000);
+            tradesManager.addTrade("ABC", TradeType.buy, 1, 1000 + i, 10);
+        }
+        tradesManager.closeJournal();
+        assertFalse(new File(this.directory, "journal-0000000000000000000.dat").exists());
+        int segmentsCount = this.directory.listFiles().length;
+        assertTrue(segmentsCount < 10);
+
+        // recovered journal keeps only the newest expired segment, so new segment has all stocks
+        this.timeSource.advanceBy(2 * StockTradesManager.CALC_TIME);
+        TradesManager recovered = this.newTradesManager();
+        recovered.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        assertEquals(2, this.directory.listFiles().length);
+        assertEquals(0, recovered.getStockAnalytics("ABC").getTradesCount());
+        recovered.closeJournal();
+
+        TradesManager later = this.newTradesManager();
+        later.openJournal(this.directory, 10 * TradesJournal.RECORD_SIZE);
+        assertEquals(100, later.getStock("ABC").getParValue());
+        later.closeJournal();
+    }
+
+    @Test
+    public void testOpenWithConcurrentStocks() throws Exception {
+        final TradesManager tradesManager = this.newTradesManager();
+        final AtomicBoolean failed = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        tradesManager.addOrUpdateStock("S" + i, StockType.Common, 100, 0);
+                        tradesManager.addTrade("S" + i, TradeType.buy, 1, 100 + i, 10);
+                    }
+                } catch (Exception e) {
+                    failed.set(true);
+                }
+            }
+        });
+        writer.start();
+        // stocks added while the journal is being opened are journaled before their trades
+        tradesManager.openJournal(this.directory);
+        writer.join();
+        tradesManager.closeJournal();
+        assertFalse(failed.get());
+
+        TradesManager recovered = this.newTradesManager();
+        recovered.openJournal(this.directory);
+        for (int i = 0; i < 2000; i++) {
+            if (recovered.getStockAnalytics("S" + i).getTradesCount() > 0) {
+                assertEquals(100 + i, recovered.calculateStockPrice("S" + i));
+            }
+        }
+        recovered.closeJournal();
+    }
+
+    @Test
+    public void testInvalidSymbol() throws Exception {
+        TradesManager tradesManager = this.newTradesManager();
+        tradesManager.openJournal(this.directory);
+
+        // Negative test
+        try {
+            tradesManager.addOrUpdateStock("SYMBOL_LONGER_THAN_16", StockType.Common, 1, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            tradesManager.openJournal(this.directory);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        tradesManager.closeJournal();
+    }
+
+    @Test
+    public void testCorruptJournal() throws Exception {
+        TradesManager tradesManager = this.newTradesManager();
+        tradesManager.openJournal(this.directory);
+        tradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 0);
+        tradesManager.addTrade("ABC", TradeType.buy, 1, 1000, 10);
+        tradesManager.closeJournal();
+
+        // unknown trade type of the journaled trade
+        File segment = this.directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            for (long position = TradesJournal.RECORD_SIZE; position < file.length();
+                 position += TradesJournal.RECORD_SIZE) {
+                file.seek(position);
+                if (file.readByte() == TradesCodec.TRADE_RECORD) {
+                    file.writeByte(99);
+                }
+            }
+        } finally {
+            file.close();
+        }
+
+        // Negative test
+        try {
+            this.newTradesManager().openJournal(this.directory);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    private TradesManager newTradesManager() {
+        return new TradesManager(StockTradesManager.CALC_TIME, 1000, this.timeSource);
+    }
+}
@@ -1,12 +1,33 @@
 package com.jpmorgan.test.bl;
 
+import com.jpmorgan.test.pojo.MarketAnalytics;
+import com.jpmorgan.test.pojo.MetricsSnapshot;
 import com.jpmorgan.test.pojo.Stock;
+import com.jpmorgan.test.pojo.StockAnalytics;
 import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeRequest;
+import com.jpmorgan.test.pojo.TradeStatus;
 import com.jpmorgan.test.pojo.TradeType;
+import com.jpmorgan.test.pojo.TradesAggregate;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import static org.junit.Assert.*;
 
@@ -86,6 +107,47 @@ public class TradesManagerTest {
         }
     }
 
+    @Test
+    public void testAddTrades() throws Exception {
+        List<TradeRequest> tradeRequests = new ArrayList<TradeRequest>();
+        tradeRequests.add(new TradeRequest(STOCK_SYMBOLS[0], TradeType.buy, 2, 100, 1));
+        tradeRequests.add(new TradeRequest("NOT", TradeType.buy, 1, 1, 1));
+        tradeRequests.add(new TradeRequest(STOCK_SYMBOLS[1], TradeType.sell, 1, 500, 1));
+        tradeRequests.add(new TradeRequest(STOCK_SYMBOLS[0], TradeType.buy, 0, 1, 1));
+        tradeRequests.add(new TradeRequest(null, TradeType.buy, 1, 1, 1));
+        tradeRequests.add(new TradeRequest(STOCK_SYMBOLS[0], TradeType.sell, 1, 400, 1));
+
+        TradeStatus[] statuses = this.tradesManager.addTrades(tradeRequests);
+        assertArrayEquals(new TradeStatus[] {TradeStatus.Accepted, TradeStatus.StockNotInitialized,
+                                             TradeStatus.Accepted, TradeStatus.InvalidArguments,
+                                             TradeStatus.StockNotInitialized, TradeStatus.Accepted}, statuses);
+        assertEquals(200, this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+        assertEquals(500, this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[1]));
+
+        // Negative test
+        try {
+            this.tradesManager.addTrades(new String[1], new TradeType[1], new int[1], new int[1], new int[0]);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testAddOrUpdateStock() throws Exception {
+        this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 10000, 1000);
+        Stock stock = this.tradesManager.getStock(STOCK_SYMBOLS[0]);
+
+        this.tradesManager.addOrUpdateStock(STOCK_SYMBOLS[0], StockType.Preferred, 500, 10);
+        Stock updatedStock = this.tradesManager.getStock(STOCK_SYMBOLS[0]);
+        assertEquals(StockType.Preferred, updatedStock.getType());
+        assertEquals(500, updatedStock.getParValue());
+        assertEquals(10, updatedStock.getFixedDividend());
+        assertEquals(stock, updatedStock);
+        assertNotSame(stock, updatedStock);
+
+        // trades are kept
+        assertEquals(10000, this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+    }
+
     @Test
     public void testCalculateDividendYield() throws Exception {
         // find stocks with Preferred and common type
@@ -147,4 +209,539 @@ public class TradesManagerTest {
         double gbce = this.tradesManager.calculateGBCEAllSharesIndex();
         assertEquals(gbce, 3380.01516, 0.0001);
     }
+
+    @Test
+    public void testGBCEAllSharesIndexMaxLag() throws Exception {
+        this.tradesManager.setGBCEAllSharesIndexMaxLag(60 * 60 * 1000);
+        assertTrue(0.0 == this.tradesManager.calculateGBCEAllSharesIndex());
+
+        for (String stockSymbol: STOCK_SYMBOLS) {
+            this.tradesManager.addTrade(stockSymbol, TradeType.buy, 1, 1000, 1000);
+        }
+        // cached value is reused
+        assertTrue(0.0 == this.tradesManager.calculateGBCEAllSharesIndex());
+
+        this.tradesManager.setGBCEAllSharesIndexMaxLag(0);
+        assertEquals(1000, this.tradesManager.calculateGBCEAllSharesIndex(), 0.0001);
+
+        // new stock is always reflected
+        this.tradesManager.setGBCEAllSharesIndexMaxLag(60 * 60 * 1000);
+        this.tradesManager.addOrUpdateStock("NEW", StockType.Common, 1, 1);
+        assertTrue(0.0 == this.tradesManager.calculateGBCEAllSharesIndex());
+
+        // Negative test
+        try {
+            this.tradesManager.setGBCEAllSharesIndexMaxLag(-1);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testGetStockAnalytics() throws Exception {
+        StockAnalytics stockAnalytics = this.tradesManager.getStockAnalytics(STOCK_SYMBOLS[0]);
+        assertEquals(0, stockAnalytics.getStockPrice());
+        assertNull(stockAnalytics.getLastTrade());
+        assertEquals(0, stockAnalytics.getVolume());
+        assertTrue(Float.isNaN(stockAnalytics.getPeRatio()));
+
+        this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 2, 10000, 1000);
+        this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.sell, 3, 10000, 2000);
+        stockAnalytics = this.tradesManager.getStockAnalytics(STOCK_SYMBOLS[0]);
+        assertEquals(STOCK_SYMBOLS[0], stockAnalytics.getStockSymbol());
+        assertEquals(10000, stockAnalytics.getStockPrice());
+        assertEquals(5, stockAnalytics.getVolume());
+        assertEquals(2, stockAnalytics.getTradesCount());
+        assertEquals(2000, stockAnalytics.getLastTrade().getDividend());
+        assertEquals(this.tradesManager.calculateDividendYield(STOCK_SYMBOLS[0]), stockAnalytics.getDividendYield(),
+                     0.0001);
+        assertEquals(5, stockAnalytics.getPeRatio(), 0.0001);
+
+        // Negative test
+        try {
+            this.tradesManager.getStockAnalytics("NOT");
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+    }
+
+    @Test
+    public void testConsistentStockAnalytics() throws Exception {
+        final TradesManager concurrentTradesManager = new TradesManager(StockTradesManager.CALC_TIME,
+                                                                        StockTradesManager.DEFAULT_MAX_TRADES,
+                                                                        new SimulatedTimeSource(1000000000L));
+        concurrentTradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 0);
+        final AtomicBoolean finished = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 200000; i++) {
+                        concurrentTradesManager.addTrade("ABC", TradeType.buy, 1, 100, 10);
+                    }
+                } catch (StockNotInitializedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    finished.set(true);
+                }
+            }
+        });
+        writer.start();
+
+        // all trades are in calculation interval, so the last trade is always counted
+        while (!finished.get()) {
+            StockAnalytics stockAnalytics = concurrentTradesManager.getStockAnalytics("ABC");
+            long lastSequence = stockAnalytics.getLastTrade() == null ? 0 :
+                                stockAnalytics.getLastTrade().getSequence();
+            assertEquals(lastSequence, stockAnalytics.getTradesCount());
+        }
+        writer.join();
+        assertEquals(200000, concurrentTradesManager.getStockAnalytics("ABC").getTradesCount());
+    }
+
+    @Test
+    public void testCalculateMarketAnalytics() throws Exception {
+        // Add trades to all STOCKS and many more stocks, so calculation is split
+        for (int i = 0; i < STOCK_SYMBOLS.length; i++) {
+            this.tradesManager.addTrade(STOCK_SYMBOLS[i], TradeType.buy, 1, (i+1)*1000, 1000);
+        }
+        for (int i = 0; i < 1000; i++) {
+            this.tradesManager.addOrUpdateStock("S" + i, StockType.Common, 100, 0);
+            this.tradesManager.addTrade("S" + i, TradeType.buy, 1, 100 + i, 10);
+        }
+        this.tradesManager.addOrUpdateStock("NOTRADES", StockType.Preferred, 100, 2);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MarketAnalytics marketAnalytics = this.tradesManager.calculateMarketAnalytics(pool);
+            assertEquals(STOCK_SYMBOLS.length + 1001, marketAnalytics.getAllStockAnalytics().size());
+            assertEquals(this.tradesManager.calculateGBCEAllSharesIndex(), marketAnalytics.getAllSharesIndex(), 0.0001);
+
+            for (int i = 0; i < STOCK_SYMBOLS.length; i++) {
+                StockAnalytics stockAnalytics = marketAnalytics.getStockAnalytics(STOCK_SYMBOLS[i]);
+                assertEquals(this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[i]), stockAnalytics.getStockPrice());
+                assertEquals(this.tradesManager.calculateDividendYield(STOCK_SYMBOLS[i]),
+                             stockAnalytics.getDividendYield(), 0.0001);
+                assertEquals(this.tradesManager.calculatePERatio(STOCK_SYMBOLS[i]), stockAnalytics.getPeRatio(),
+                             0.0001);
+            }
+            assertEquals(1099, marketAnalytics.getStockAnalytics("S999").getStockPrice());
+            // stock without trades has no price, so yield and P/E Ratio are not numbers
+            assertTrue(Float.isNaN(marketAnalytics.getStockAnalytics("NOTRADES").getDividendYield()));
+            assertTrue(Float.isNaN(marketAnalytics.getStockAnalytics("NOTRADES").getPeRatio()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSimulatedTime() throws Exception {
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(1000000000L);
+        TradesManager simulatedTradesManager = new TradesManager(StockTradesManager.CALC_TIME, 1000, timeSource);
+        simulatedTradesManager.addOrUpdateStock(STOCK_SYMBOLS[0], StockType.Common, 100, 0);
+
+        simulatedTradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+        assertEquals(1000000000L,
+                     simulatedTradesManager.getStockAnalytics(STOCK_SYMBOLS[0]).getLastTrade().getDateTime());
+
+        // trade with explicit time
+        simulatedTradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1000000000L + 60000, 1, 3000, 10);
+        timeSource.advanceBy(60000);
+        assertEquals(2000, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+
+        // first trade leaves calculation interval
+        timeSource.advanceTo(1000000000L + StockTradesManager.CALC_TIME + 1);
+        assertEquals(3000, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+
+        // time never goes back
+        assertEquals(1000000000L + StockTradesManager.CALC_TIME + 1, timeSource.advanceTo(0));
+
+        // Negative test
+        try {
+            simulatedTradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 0, 1, 3000, 10);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(0);
+        TradesManager replayTradesManager = new TradesManager(StockTradesManager.CALC_TIME, 1000, timeSource);
+        String records = "# recorded day\n" +
+                "S,ABC,Common,100,0\n" +
+                "S,GIN,Preferred,100,2\n" +
+                "T,1000000,ABC,buy,1,1000,10\n" +
+                "\n" +
+                "T,1000000,GIN,sell,2,4000,10\n" +
+                "T,1060000,ABC,buy,1,3000,10\n" +
+                "T,1500000,ABC,buy,1,5000,10\n";
+
+        TradesReplayer replayer = new TradesReplayer(replayTradesManager, timeSource);
+        assertEquals(4, replayer.replay(new StringReader(records)));
+        assertEquals(1500000, timeSource.currentTimeMillis());
+        assertEquals(3000, replayTradesManager.calculateStockPrice("ABC"));
+        assertEquals(4000, replayTradesManager.calculateStockPrice("GIN"));
+
+        // Negative tests
+        try {
+            replayer.replay(new StringReader("T,3000000,ABC,hold,1,5000,10\n"));
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            replayer.replay(new StringReader("T,3000000,NOT,buy,1,5000,10\n"));
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        try {
+            new TradesReplayer(replayTradesManager, new SimulatedTimeSource(0));
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testGetTradesAggregate() throws Exception {
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(1000000000000L);
+        TradesManager simulatedTradesManager = new TradesManager(StockTradesManager.CALC_TIME, 1000, timeSource);
+        simulatedTradesManager.addOrUpdateStock(STOCK_SYMBOLS[0], StockType.Common, 100, 0);
+
+        simulatedTradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+        timeSource.advanceBy(30 * 60 * 1000);
+        simulatedTradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 3000, 10);
+
+        // first trade is evicted from raw trades, but it is still aggregated
+        assertEquals(3000, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+        assertEquals(3000, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0], 60 * 1000));
+        assertEquals(2000, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0], 60 * 60 * 1000));
+        TradesAggregate aggregate = simulatedTradesManager.getTradesAggregate(STOCK_SYMBOLS[0], 60 * 60 * 1000);
+        assertEquals(2, aggregate.getTradesCount());
+        assertEquals(1000, aggregate.getOpenPrice());
+        assertEquals(3000, aggregate.getClosePrice());
+
+        // Negative tests
+        try {
+            simulatedTradesManager.getTradesAggregate(STOCK_SYMBOLS[0], 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            simulatedTradesManager.getTradesAggregate(STOCK_SYMBOLS[0], StockTradesManager.MAX_AGGREGATE_WINDOW + 1);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testSubscribe() throws Exception {
+        final BlockingQueue<StockAnalytics> stockUpdates = new LinkedBlockingQueue<StockAnalytics>();
+        final BlockingQueue<Double> indexUpdates = new LinkedBlockingQueue<Double>();
+        Subscription subscription = this.tradesManager.subscribe(STOCK_SYMBOLS[0], new StockAnalyticsListener() {
+            @Override
+            public void onStockAnalytics(StockAnalytics stockAnalytics) {
+                stockUpdates.add(stockAnalytics);
+            }
+        });
+        this.tradesManager.subscribeAllSharesIndex(new AllSharesIndexListener() {
+            @Override
+            public void onAllSharesIndex(long calculationTime, double allSharesIndex) {
+                indexUpdates.add(allSharesIndex);
+            }
+        });
+
+        this.tradesManager.startAnalyticsPublisher(10);
+        try {
+            // current values first
+            assertEquals(0, stockUpdates.poll(5, TimeUnit.SECONDS).getTradesCount());
+            assertEquals(0.0, indexUpdates.poll(5, TimeUnit.SECONDS), 0.0001);
+
+            // many trades are coalesced to few updates
+            for (int i = 0; i < 1000; i++) {
+                this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+            }
+            StockAnalytics stockAnalytics;
+            do {
+                stockAnalytics = stockUpdates.poll(5, TimeUnit.SECONDS);
+            } while (stockAnalytics.getTradesCount() < 1000);
+            assertEquals(1000, stockAnalytics.getStockPrice());
+            assertEquals(0, stockUpdates.size());
+
+            // index changes only when all stocks have price
+            for (String stockSymbol: STOCK_SYMBOLS) {
+                this.tradesManager.addTrade(stockSymbol, TradeType.buy, 1, 1000, 10);
+            }
+            double indexValue;
+            do {
+                indexValue = indexUpdates.poll(5, TimeUnit.SECONDS);
+            } while (indexValue == 0.0);
+            assertEquals(1000, indexValue, 0.0001);
+
+            // no updates after cancel
+            subscription.cancel();
+            stockUpdates.clear();
+            this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+            assertNull(stockUpdates.poll(100, TimeUnit.MILLISECONDS));
+        } finally {
+            this.tradesManager.stopAnalyticsPublisher();
+        }
+
+        // Negative test
+        try {
+            this.tradesManager.subscribe("NOT", null);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testSubscribeFailingListener() throws Exception {
+        final BlockingQueue<StockAnalytics> stockUpdates = new LinkedBlockingQueue<StockAnalytics>();
+        this.tradesManager.subscribe(STOCK_SYMBOLS[0], new StockAnalyticsListener() {
+            @Override
+            public void onStockAnalytics(StockAnalytics stockAnalytics) {
+                throw new AssertionError("failing listener");
+            }
+        });
+        this.tradesManager.subscribe(STOCK_SYMBOLS[0], new StockAnalyticsListener() {
+            @Override
+            public void onStockAnalytics(StockAnalytics stockAnalytics) {
+                stockUpdates.add(stockAnalytics);
+            }
+        });
+        this.tradesManager.subscribeAllSharesIndex(new AllSharesIndexListener() {
+            @Override
+            public void onAllSharesIndex(long calculationTime, double allSharesIndex) {
+                throw new OutOfMemoryError("failing listener");
+            }
+        });
+
+        this.tradesManager.startAnalyticsPublisher(10);
+        try {
+            assertEquals(0, stockUpdates.poll(5, TimeUnit.SECONDS).getTradesCount());
+
+            // publisher keeps running and the stock is published again after it changes
+            for (int i = 1; i <= 3; i++) {
+                this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+                StockAnalytics stockAnalytics;
+                do {
+                    stockAnalytics = stockUpdates.poll(5, TimeUnit.SECONDS);
+                } while (stockAnalytics.getTradesCount() < i);
+                assertEquals(i, stockAnalytics.getTradesCount());
+            }
+        } finally {
+            this.tradesManager.stopAnalyticsPublisher();
+        }
+    }
+
+    @Test
+    public void testTryAddTradeAllocation() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported() || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+
+        // max trades limit keeps the buffers at stable size
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(1000000000L);
+        TradesManager simulatedTradesManager = new TradesManager(StockTradesManager.CALC_TIME, 1000, timeSource);
+        for (String stockSymbol: STOCK_SYMBOLS) {
+            simulatedTradesManager.addOrUpdateStock(stockSymbol, StockType.Common, 100, 1);
+        }
+        Trade lastTrade = new Trade();
+
+        long threadId = Thread.currentThread().getId();
+        int tradesCount = 100000;
+        long allocatedBytes = 0;
+        for (int round = 0; round < 5; round++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < tradesCount; i++) {
+                String stockSymbol = STOCK_SYMBOLS[i % STOCK_SYMBOLS.length];
+                assertEquals(TradeStatus.Accepted,
+                             simulatedTradesManager.tryAddTrade(stockSymbol, TradeType.buy, 1, 1000 + i % 10, 10));
+                simulatedTradesManager.calculateStockPrice(stockSymbol);
+                simulatedTradesManager.readLastTrade(stockSymbol, lastTrade);
+                // trades leave calculation interval and the index is refreshed on every trade
+                simulatedTradesManager.calculateGBCEAllSharesIndex();
+                timeSource.advanceBy(10);
+            }
+            allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        }
+
+        // zero bytes per trade after warm-up
+        assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < tradesCount);
+        assertEquals(1005, simulatedTradesManager.calculateStockPrice(STOCK_SYMBOLS[0]));
+        assertEquals(10, lastTrade.getDividend());
+
+        // Negative tests
+        assertEquals(TradeStatus.InvalidArguments,
+                     simulatedTradesManager.tryAddTrade(STOCK_SYMBOLS[0], null, 1, 1000, 10));
+        assertEquals(TradeStatus.StockNotInitialized,
+                     simulatedTradesManager.tryAddTrade("NOT", TradeType.buy, 1, 1000, 10));
+        assertEquals(TradeStatus.StockNotInitialized,
+                     simulatedTradesManager.tryAddTrade(null, TradeType.buy, 1, 1000, 10));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        // nothing is recorded while metrics are disabled
+        this.tradesManager.addTrade(STOCK_SYMBOLS[0], TradeType.buy, 1, 1000, 10);
+        assertEquals(0, this.tradesManager.getMetricsSnapshot().getAcceptedTradesCount());
+
+        this.tradesManager.setMetricsEnabled(true);
+        for (int i = 0; i < 1000; i++) {
+            this.tradesManager.addTrade(STOCK_SYMBOLS[i % 2], TradeType.buy, 1, 1000, 10);
+        }
+        this.tradesManager.tryAddTrade("NOT", TradeType.buy, 1, 1000, 10);
+        this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[0]);
+        this.tradesManager.calculateGBCEAllSharesIndex();
+
+        MetricsSnapshot snapshot = this.tradesManager.getMetricsSnapshot();
+        assertEquals(1000, snapshot.getAcceptedTradesCount());
+        assertEquals(1, snapshot.getRejectedTradesCount());
+        assertEquals(1001, snapshot.getRetainedTradesCount());
+        assertEquals(501, snapshot.getStockMetrics().get(STOCK_SYMBOLS[0]).getTradesCount());
+        assertEquals(501, snapshot.getStockMetrics().get(STOCK_SYMBOLS[0]).getWindowTradesCount());
+        assertEquals(0, snapshot.getStockMetrics().get(STOCK_SYMBOLS[2]).getRetainedTradesCount());
+        assertEquals(1, snapshot.getLatencies().get("calculateStockPrice").getCount());
+        assertEquals(1, snapshot.getLatencies().get("calculateGBCEAllSharesIndex").getCount());
+        assertEquals(0, snapshot.getLatencies().get("calculateMarketAnalytics").getCount());
+        assertTrue(snapshot.getLatencies().get("addTrade").getCount() < 1001);
+
+        // JMX
+        this.tradesManager.registerMetricsMBean("test");
+        try {
+            ObjectName objectName = new ObjectName("com.jpmorgan.test:type=TradesManager,name=\"test\"");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1000L, server.getAttribute(objectName, "AcceptedTradesCount"));
+            assertEquals(1L, ((CompositeData)server.getAttribute(objectName, "CalculateStockPriceLatency"))
+                    .get("count"));
+            try {
+                this.tradesManager.registerMetricsMBean("test");
+                assertTrue(false);
+            } catch (RuntimeException e) {}
+        } finally {
+            this.tradesManager.unregisterMetricsMBean();
+        }
+    }
+
+    @Test
+    public void testStockIds() throws Exception {
+        // ids are dense and don't change on update
+        for (int i = 0; i < STOCK_SYMBOLS.length; i++) {
+            assertEquals(i, this.tradesManager.getStockId(STOCK_SYMBOLS[i]));
+        }
+        assertEquals(2, this.tradesManager.addOrUpdateStock(STOCK_SYMBOLS[2], StockType.Common, 100, 1));
+        assertEquals(StockType.Common, this.tradesManager.getStock(STOCK_SYMBOLS[2]).getType());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(STOCK_SYMBOLS.length + i,
+                         this.tradesManager.addOrUpdateStock("S" + i, StockType.Common, 1, 1));
+        }
+
+        // id overloads give the same results as symbol ones
+        int stockId = this.tradesManager.getStockId(STOCK_SYMBOLS[2]);
+        this.tradesManager.addTrade(stockId, TradeType.buy, 10, 1000, 5);
+        assertEquals(TradeStatus.Accepted, this.tradesManager.tryAddTrade(stockId, TradeType.sell, 20, 4000, 5));
+        assertEquals(TradeStatus.InvalidArguments, this.tradesManager.tryAddTrade(stockId, TradeType.sell, 0, 1, 1));
+        assertEquals(this.tradesManager.calculateStockPrice(STOCK_SYMBOLS[2]),
+                     this.tradesManager.calculateStockPrice(stockId));
+        assertEquals(this.tradesManager.calculateDividendYield(STOCK_SYMBOLS[2]),
+                     this.tradesManager.calculateDividendYield(stockId), 0);
+        assertEquals(this.tradesManager.calculatePERatio(STOCK_SYMBOLS[2]),
+                     this.tradesManager.calculatePERatio(stockId), 0);
+        assertEquals(this.tradesManager.getStockAnalytics(STOCK_SYMBOLS[2]).getStockPrice(),
+                     this.tradesManager.getStockAnalytics(stockId).getStockPrice());
+        Trade trade = new Trade();
+        assertTrue(this.tradesManager.readLastTrade(STOCK_SYMBOLS[2], trade));
+        assertEquals(20, trade.getQuantity());
+
+        // Negative tests
+        try {
+            this.tradesManager.getStockId("NOT");
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        try {
+            this.tradesManager.addTrade(-1, TradeType.buy, 1, 1, 1);
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        try {
+            this.tradesManager.calculateStockPrice(STOCK_SYMBOLS.length + 100);
+            assertTrue(false);
+        } catch (StockNotInitializedException e) {}
+        assertEquals(TradeStatus.StockNotInitialized,
+                     this.tradesManager.tryAddTrade(1000, TradeType.buy, 1, 1, 1));
+    }
+
+    @Test
+    public void testAnalyticsCache() throws Exception {
+        SimulatedTimeSource timeSource = new SimulatedTimeSource(1000000000L);
+        TradesManager cachedTradesManager = new TradesManager(StockTradesManager.CALC_TIME,
+                                                              StockTradesManager.DEFAULT_MAX_TRADES, timeSource);
+        cachedTradesManager.addOrUpdateStock("ABC", StockType.Common, 100, 1);
+        cachedTradesManager.addOrUpdateStock("BCD", StockType.Common, 100, 1);
+        cachedTradesManager.enableAnalyticsCache(1, 0);
+
+        // value is reused until new trade is added, callers get copy that doesn't change the cached value
+        cachedTradesManager.addTrade("ABC", TradeType.buy, 10, 1000, 5);
+        StockAnalytics stockAnalytics = cachedTradesManager.getStockAnalytics("ABC");
+        stockAnalytics.setStockPrice(0);
+        stockAnalytics.getLastTrade().setQuantity(0);
+        stockAnalytics = cachedTradesManager.getStockAnalytics("ABC");
+        assertEquals(1000, stockAnalytics.getStockPrice());
+        assertEquals(10, stockAnalytics.getLastTrade().getQuantity());
+        assertEquals(1000, cachedTradesManager.calculateStockPrice("ABC"));
+        assertEquals(200, cachedTradesManager.calculatePERatio("ABC"), 0);
+        timeSource.advanceBy(1000);
+        cachedTradesManager.addTrade("ABC", TradeType.buy, 10, 2000, 5);
+        assertEquals(2, cachedTradesManager.getStockAnalytics("ABC").getTradesCount());
+        assertEquals(1500, cachedTradesManager.calculateStockPrice("ABC"));
+
+        // value is recalculated when the oldest trade leaves calculation interval
+        timeSource.advanceTo(1000000000L + StockTradesManager.CALC_TIME + 1);
+        assertEquals(2000, cachedTradesManager.calculateStockPrice("ABC"));
+
+        // the oldest stock is evicted when the cache is full, so its stale value is not reused
+        cachedTradesManager.enableAnalyticsCache(1, 5000);
+        assertEquals(1, cachedTradesManager.getStockAnalytics("ABC").getTradesCount());
+        cachedTradesManager.addTrade("ABC", TradeType.buy, 10, 2000, 5);
+        assertEquals(1, cachedTradesManager.getStockAnalytics("ABC").getTradesCount());
+        cachedTradesManager.getStockAnalytics("BCD");
+        assertEquals(2, cachedTradesManager.getStockAnalytics("ABC").getTradesCount());
+
+        // stock update is visible immediately and the replaced entry leaves the cache
+        assertEquals(1, cachedTradesManager.getAnalyticsCache().size());
+        cachedTradesManager.addOrUpdateStock("ABC", StockType.Preferred, 100, 10);
+        assertEquals(0, cachedTradesManager.getAnalyticsCache().size());
+        assertEquals(cachedTradesManager.calculateDividendYield("ABC"), 10 / 2000f, 0);
+        assertEquals(1, cachedTradesManager.getAnalyticsCache().size());
+
+        // stale value is reused for max staleness
+        cachedTradesManager.enableAnalyticsCache(10, 5000);
+        assertEquals(2000, cachedTradesManager.getStockAnalytics("ABC").getStockPrice());
+        cachedTradesManager.addTrade("ABC", TradeType.buy, 10, 4000, 5);
+        assertEquals(2000, cachedTradesManager.getStockAnalytics("ABC").getStockPrice());
+        timeSource.advanceBy(5001);
+        assertEquals(3000, cachedTradesManager.calculateStockPrice("ABC"));
+
+        // trade added in the same millisecond is visible without staleness
+        cachedTradesManager.enableAnalyticsCache(10, 0);
+        cachedTradesManager.addOrUpdateStock("CDE", StockType.Common, 100, 1);
+        cachedTradesManager.addTrade("CDE", TradeType.buy, 10, 1000, 5);
+        assertEquals(1000, cachedTradesManager.calculateStockPrice("CDE"));
+        cachedTradesManager.addTrade("CDE", TradeType.buy, 30, 3000, 5);
+        assertEquals(2500, cachedTradesManager.calculateStockPrice("CDE"));
+        assertEquals(2, cachedTradesManager.getStockAnalytics("CDE").getTradesCount());
+
+        cachedTradesManager.disableAnalyticsCache();
+        assertNotSame(cachedTradesManager.getStockAnalytics("ABC"), cachedTradesManager.getStockAnalytics("ABC"));
+
+        // Negative tests
+        cachedTradesManager.enableAnalyticsCache(10, 0);
+        try {
+            cachedTradesManager.calculatePERatio("BCD");
+            assertTrue(false);
+        } catch (NoSuchElementException e) {}
+        try {
+            cachedTradesManager.enableAnalyticsCache(0, 0);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            cachedTradesManager.enableAnalyticsCache(1, -1);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
 }
@@ -0,0 +1,205 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for TradesRingBuffer.
+ */
+public class TradesRingBufferTest {
+    private TradesRingBuffer tradesBuffer;
+    private long sequence;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tradesBuffer = new TradesRingBuffer();
+        this.sequence = 0;
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        // Add and remove more trades than initial capacity, so buffer rolls and grows
+        for (int i = 0; i < 5000; i++) {
+            this.tradesBuffer.add(++sequence, TradeType.buy, i, 2, i < 4000 ? 10 : 40, 1);
+            if (i % 2 == 0) {
+                this.tradesBuffer.removeFirst();
+            }
+        }
+
+        assertEquals(2500, this.tradesBuffer.size());
+        assertEquals(2500, this.tradesBuffer.getFirstDateTime());
+        assertEquals(40, this.tradesBuffer.getStockPrice(4000));
+        assertEquals(25, this.tradesBuffer.getStockPrice(3000));
+        assertEquals(0, this.tradesBuffer.getStockPrice(5000));
+        assertEquals(1000, this.tradesBuffer.snapshot(4000).getTradesCount());
+        assertEquals(2500, this.tradesBuffer.snapshot(0).getTradesCount());
+    }
+
+    @Test
+    public void testAddLateTrade() throws Exception {
+        this.tradesBuffer.add(++sequence, TradeType.buy, 10, 1, 100, 1);
+        this.tradesBuffer.add(++sequence, TradeType.buy, 30, 1, 300, 1);
+        this.tradesBuffer.add(++sequence, TradeType.sell, 20, 2, 200, 1);
+
+        Iterator<Trade> iterator = this.tradesBuffer.snapshot(0).iterator();
+        assertEquals(10, iterator.next().getDateTime());
+        Trade trade = iterator.next();
+        assertEquals(20, trade.getDateTime());
+        assertEquals(3, trade.getSequence());
+        assertEquals(TradeType.sell, trade.getTradeType());
+        assertEquals(30, iterator.next().getDateTime());
+        assertFalse(iterator.hasNext());
+
+        assertEquals(200, this.tradesBuffer.getStockPrice(0));
+        assertEquals(233, this.tradesBuffer.getStockPrice(20));
+        assertEquals(300, this.tradesBuffer.getStockPrice(21));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        this.tradesBuffer.add(++sequence, TradeType.buy, 10, 1, 100, 1);
+        this.tradesBuffer.add(++sequence, TradeType.buy, 30, 1, 300, 1);
+
+        TradesSnapshot snapshot = this.tradesBuffer.snapshot(0);
+        // late trade and new trade are not visible in the snapshot
+        this.tradesBuffer.add(++sequence, TradeType.buy, 20, 1, 200, 1);
+        this.tradesBuffer.add(++sequence, TradeType.buy, 40, 1, 400, 1);
+
+        assertEquals(2, snapshot.getTradesCount());
+        assertEquals(10, snapshot.getTrade(0).getDateTime());
+        assertEquals(30, snapshot.getTrade(1).getDateTime());
+        assertEquals(2, snapshot.getVolume());
+        assertEquals(200, snapshot.getStockPrice());
+
+        snapshot = this.tradesBuffer.snapshot(15);
+        assertEquals(3, snapshot.getTradesCount());
+        assertEquals(20, snapshot.getTrade(0).getDateTime());
+        assertEquals(300, snapshot.getStockPrice());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean finished = new AtomicBoolean();
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (!finished.get()) {
+                        int price = tradesBuffer.getStockPrice(0);
+                        if (price != 0 && price != 100) {
+                            failed.set(true);
+                        }
+                        // snapshot doesn't change while trades are moved
+                        TradesSnapshot snapshot = tradesBuffer.snapshot(0);
+                        long volume = 0;
+                        long previousDateTime = Long.MIN_VALUE;
+                        for (Trade trade: snapshot) {
+                            volume += trade.getQuantity();
+                            if (trade.getDateTime() < previousDateTime) {
+                                failed.set(true);
+                            }
+                            previousDateTime = trade.getDateTime();
+                        }
+                        if (volume != snapshot.getVolume() || volume != snapshot.getTradesCount()) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        // Every 10th trade is late, so published trades are moved while readers are reading
+        for (int i = 0; i < 100000; i++) {
+            this.tradesBuffer.add(++sequence, TradeType.buy, i % 10 == 0 ? i - 5 : i, 1, 100, 1);
+            if (i % 3 == 0) {
+                this.tradesBuffer.removeFirst();
+            }
+        }
+        finished.set(true);
+        for (Thread reader: readers) {
+            reader.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(100000 - 33334, this.tradesBuffer.size());
+    }
+
+    @Test
+    public void testReadersOfReusedColumns() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean finished = new AtomicBoolean();
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    WindowStatistics statistics = new WindowStatistics();
+                    try {
+                        while (!finished.get()) {
+                            int price = tradesBuffer.getStockPrice(0);
+                            tradesBuffer.getWindowStatistics(0, statistics);
+                            tradesBuffer.getFirstDateTime(0);
+                            if (price != 0 && price != 100 || statistics.getTradesCount() > 1001) {
+                                failed.set(true);
+                            }
+                        }
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        // Buffer of stable size without snapshots, so every roll rewrites columns that readers may still read
+        for (int i = 0; i < 1000000; i++) {
+            this.tradesBuffer.add(++sequence, TradeType.buy, i, 1, 100, 1);
+            if (i >= 1000) {
+                this.tradesBuffer.removeFirst();
+            }
+        }
+        finished.set(true);
+        for (Thread reader: readers) {
+            reader.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(1000, this.tradesBuffer.size());
+    }
+
+    @Test
+    public void testPriceQuantitySumOverflow() throws Exception {
+        // every price * quantity is close to Long.MAX_VALUE, so sum overflows long after two trades
+        for (int i = 0; i < 1000; i++) {
+            this.tradesBuffer.add(++sequence, TradeType.buy, i, Integer.MAX_VALUE, i % 2 == 0 ? Integer.MAX_VALUE :
+                                  Integer.MAX_VALUE - 1, 1);
+        }
+        // late trade shifts cumulative sums that already overflowed
+        this.tradesBuffer.add(++sequence, TradeType.sell, 500, Integer.MAX_VALUE, Integer.MAX_VALUE - 1, 1);
+
+        // average of max and max - 1 with one more max - 1 trade is rounded half up to max - 1
+        assertEquals(Integer.MAX_VALUE - 1, this.tradesBuffer.getStockPrice(0));
+        assertEquals(Integer.MAX_VALUE, this.tradesBuffer.getStockPrice(998));
+        assertEquals(Integer.MAX_VALUE - 1, this.tradesBuffer.getStockPrice(999));
+
+        TradesSnapshot snapshot = this.tradesBuffer.snapshot(0);
+        assertEquals(Integer.MAX_VALUE - 1, snapshot.getStockPrice());
+        assertEquals(1001L * Integer.MAX_VALUE, snapshot.getVolume());
+        try {
+            snapshot.getPriceQuantitySum();
+            assertTrue(false);
+        } catch (ArithmeticException e) {}
+    }
+}
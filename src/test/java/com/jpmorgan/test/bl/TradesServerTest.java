@@ -0,0 +1,160 @@
+package com.jpmorgan.test.bl;
+
+import com.jpmorgan.test.pojo.Stock;
+import com.jpmorgan.test.pojo.StockType;
+import com.jpmorgan.test.pojo.Trade;
+import com.jpmorgan.test.pojo.TradeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test for TradesCodec and TradesServer.
+ */
+public class TradesServerTest {
+    private static final long START_TIME = 1000000000L;
+    private TradesManager tradesManager;
+    private TradesServer tradesServer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.tradesManager = new TradesManager(StockTradesManager.CALC_TIME, StockTradesManager.DEFAULT_MAX_TRADES,
+                                               new SimulatedTimeSource(START_TIME));
+        this.tradesServer = new TradesServer(this.tradesManager);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.tradesServer.stop();
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(3 * TradesCodec.RECORD_SIZE + 10);
+        TradesCodec.encodeStock(buffer, 7, newStock("ABC", StockType.Preferred, 100, 5));
+        TradesCodec.encodeTrade(buffer, 7, new Trade(TradeType.sell, START_TIME, 10, 1000, 3));
+        TradesCodec.encodeTrade(buffer, 7, TradeType.buy, 0, 20, 4000, 4);
+        assertEquals(3 * TradesCodec.RECORD_SIZE, buffer.position());
+
+        // partial record stays in the buffer
+        buffer.put(new byte[10]);
+        buffer.flip();
+        final List<String> records = new ArrayList<String>();
+        TradesCodecListener listener = new TradesCodecListener() {
+            @Override
+            public void onTrade(int stockId, TradeType tradeType, long dateTime, int quantity, int totalPrice,
+                                int dividend) {
+                records.add(stockId + " " + tradeType + " " + dateTime + " " + quantity + " " + totalPrice + " " +
+                            dividend);
+            }
+
+            @Override
+            public void onStock(int stockId, String stockSymbol, StockType stockType, int parValue,
+                                int fixedDividend) {
+                records.add(stockId + " " + stockSymbol + " " + stockType + " " + parValue + " " + fixedDividend);
+            }
+        };
+        assertEquals(3, TradesCodec.decode(buffer, listener));
+        assertEquals(3 * TradesCodec.RECORD_SIZE, buffer.position());
+        assertEquals("7 ABC Preferred 100 5", records.get(0));
+        assertEquals("7 sell " + START_TIME + " 10 1000 3", records.get(1));
+        assertEquals("7 buy 0 20 4000 4", records.get(2));
+        assertEquals(0, TradesCodec.decode(buffer, listener));
+
+        // Negative tests
+        try {
+            TradesCodec.encodeTrade(buffer, 7, TradeType.buy, 0, 1, 1, 1);
+            assertTrue(false);
+        } catch (BufferOverflowException e) {}
+        try {
+            TradesCodec.encodeStock(ByteBuffer.allocate(TradesCodec.RECORD_SIZE), 1,
+                                    newStock("ABCDEFGHIJKLMNOPQ", StockType.Common, 1, 1));
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+        try {
+            TradesCodec.decode(ByteBuffer.allocate(TradesCodec.RECORD_SIZE), listener);
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        this.tradesServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            this.tradesServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            assertTrue(false);
+        } catch (RuntimeException e) {}
+
+        SocketChannel channel = SocketChannel.open(this.tradesServer.getLocalAddress());
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(1000 * TradesCodec.RECORD_SIZE);
+            TradesCodec.encodeStock(buffer, 1, newStock("ABC", StockType.Common, 100, 1));
+            for (int i = 0; i < 998; i++) {
+                TradesCodec.encodeTrade(buffer, 1, TradeType.buy, 0, 10, 1000 + i % 2 * 20, 5);
+            }
+            // unknown stock id is rejected
+            TradesCodec.encodeTrade(buffer, 2, TradeType.buy, 0, 10, 1000, 5);
+            buffer.flip();
+
+            // records are split across writes
+            ByteBuffer part = buffer.duplicate();
+            part.limit(TradesCodec.RECORD_SIZE + 5);
+            channel.write(part);
+            Thread.sleep(50);
+            buffer.position(part.position());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            waitForRecords(998, 1);
+            assertEquals(0, this.tradesManager.getStockId("ABC"));
+            assertEquals(1010, this.tradesManager.calculateStockPrice("ABC"));
+            assertEquals(998, this.tradesManager.getStockAnalytics("ABC").getTradesCount());
+        } finally {
+            channel.close();
+        }
+
+        // connection with unknown record type is closed, other connections are served
+        SocketChannel invalid = SocketChannel.open(this.tradesServer.getLocalAddress());
+        try {
+            invalid.write(ByteBuffer.allocate(TradesCodec.RECORD_SIZE));
+            assertEquals(-1, invalid.read(ByteBuffer.allocate(1)));
+        } finally {
+            invalid.close();
+        }
+
+        this.tradesServer.stop();
+        assertNull(this.tradesServer.getLocalAddress());
+    }
+
+    private void waitForRecords(long accepted, long rejected) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (this.tradesServer.getAcceptedTradesCount() == accepted &&
+                this.tradesServer.getRejectedRecordsCount() == rejected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(accepted, this.tradesServer.getAcceptedTradesCount());
+        assertEquals(rejected, this.tradesServer.getRejectedRecordsCount());
+    }
+
+    private static Stock newStock(String symbol, StockType type, int parValue, int fixedDividend) {
+        Stock stock = new Stock();
+        stock.setSymbol(symbol);
+        stock.setType(type);
+        stock.setParValue(parValue);
+        stock.setFixedDividend(fixedDividend);
+        return stock;
+    }
+}